@@ -8,7 +8,116 @@ import lombok.Getter;
 public enum RpcConfigEnum {
 
     RPC_CONFIG_PATH("rpc.properties"),
-    ZK_ADDRESS("rpc.zookeeper.address");
+    ZK_ADDRESS("rpc.zookeeper.address"),
+    /**
+     * protocol version the client speaks, 1 for servers that don't know version 2 yet, default 2
+     */
+    PROTOCOL_VERSION("rpc.protocol.version"),
+    /**
+     * the most connections a client opens to one server address, default min(4, number of processors)
+     */
+    CLIENT_POOL_MAX_SIZE("rpc.client.pool.max-size"),
+    /**
+     * a client opens another connection to a server once the least busy one has this many requests waiting for a
+     * response, default 16
+     */
+    CLIENT_POOL_GROW_PENDING("rpc.client.pool.grow-pending"),
+    /**
+     * a pooled connection without calls for this many milliseconds is closed, the last one of an address is kept,
+     * default 60000
+     */
+    CLIENT_POOL_IDLE_TIMEOUT("rpc.client.pool.idle-timeout-ms"),
+    /**
+     * milliseconds a client waits for a response unless the reference or the method says otherwise, default 5000
+     */
+    CLIENT_TIMEOUT("rpc.client.timeout-ms"),
+    /**
+     * threads completing the futures returned by asynchronous service methods, 0 completes them on the netty I/O
+     * thread, default number of processors
+     */
+    CLIENT_CALLBACK_THREADS("rpc.client.callback-threads"),
+    /**
+     * how @RpcReference fields are implemented, proxy for JDK dynamic proxies or bytecode for generated stubs,
+     * default proxy
+     */
+    CLIENT_STUB("rpc.client.stub"),
+    /**
+     * netty transport of client and server: auto (epoll on linux when its native library loads, nio otherwise),
+     * epoll or nio, default auto
+     */
+    TRANSPORT("rpc.transport"),
+    /**
+     * SO_SNDBUF of connections in bytes, 0 for the OS default, default 0
+     */
+    TRANSPORT_SEND_BUFFER("rpc.transport.send-buffer"),
+    /**
+     * SO_RCVBUF of connections in bytes, 0 for the OS default, default 0
+     */
+    TRANSPORT_RECEIVE_BUFFER("rpc.transport.receive-buffer"),
+    /**
+     * a channel turns unwritable when more than this many bytes wait to be written, 0 for netty's 64KiB, default 0
+     */
+    TRANSPORT_WRITE_BUFFER_HIGH("rpc.transport.write-buffer.high"),
+    /**
+     * an unwritable channel turns writable again when less than this many bytes wait, 0 for netty's 32KiB, default 0
+     */
+    TRANSPORT_WRITE_BUFFER_LOW("rpc.transport.write-buffer.low"),
+    /**
+     * send ACKs right away instead of delaying them (TCP_QUICKACK), epoll only, default false
+     */
+    TRANSPORT_TCP_QUICKACK("rpc.transport.tcp-quickack"),
+    /**
+     * flushes of a connection are coalesced until this many messages wait, writes within one event loop tick or one
+     * read are flushed together, 1 flushes every message on its own, default 64
+     */
+    TRANSPORT_FLUSH_MAX_MESSAGES("rpc.transport.flush.max-messages"),
+    /**
+     * flushes of a connection are coalesced until this many bytes wait, default 65536
+     */
+    TRANSPORT_FLUSH_MAX_BYTES("rpc.transport.flush.max-bytes"),
+    /**
+     * server sockets bound to the port with SO_REUSEPORT, each accepting on its own thread, epoll only, default 1
+     */
+    SERVER_ACCEPTORS("rpc.server.acceptors"),
+    /**
+     * dispatch or thread-per-core, default dispatch. thread-per-core runs one event loop per processor, decodes requests
+     * and calls @RpcNonBlocking methods on the loop of the connection and keeps compression stats per loop, other methods
+     * still run on their executor profile
+     */
+    SERVER_MODE("rpc.server.mode"),
+    /**
+     * decode request bodies on the service executor instead of the netty I/O thread, default true, ignored in thread-per-core mode
+     */
+    SERVER_DEFERRED_DECODE("rpc.server.deferred-decode"),
+    /**
+     * prefix of the settings of an executor profile named by @RpcService(executor): {@code <prefix>.<profile>.mode}
+     * (pool or virtual, default pool). A pool has {@code .threads} (default twice the number of processors),
+     * {@code .queue-size} (default 1024) and {@code .rejection} (abort to answer with a failure right away or caller-runs
+     * to run on the I/O thread, default abort). Virtual mode runs each request on a virtual thread, at most {@code .max-concurrency} at once (default 0,
+     * no limit), its request bodies are decoded on the I/O thread even with deferred decode. Services without a profile
+     * use "default"
+     */
+    SERVER_EXECUTOR("rpc.server.executor"),
+    /**
+     * compress type requested for message bodies, see {@link CompressTypeEnum}, e.g. gzip, lz4 or dictionary, default gzip
+     */
+    COMPRESS_TYPE("rpc.compress.type"),
+    /**
+     * bodies smaller than this many bytes are sent uncompressed, default 1024
+     */
+    COMPRESS_MIN_SIZE("rpc.compress.min-size"),
+    /**
+     * stop compressing a method whose bodies shrink by less than this percentage, default 10
+     */
+    COMPRESS_MIN_SAVING("rpc.compress.min-saving-percent"),
+    /**
+     * directory of the {@code <service interface>.dict} files used by the dictionary compress type, no dictionaries by default
+     */
+    COMPRESS_DICTIONARY_DIR("rpc.compress.dictionary.dir"),
+    /**
+     * bodies smaller than this many bytes are sent uncompressed when the dictionary compress type is used, default 64
+     */
+    COMPRESS_DICTIONARY_MIN_SIZE("rpc.compress.dictionary.min-size");
 
     private final String propertyValue;
 
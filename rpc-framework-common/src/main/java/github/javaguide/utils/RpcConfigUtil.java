@@ -0,0 +1,44 @@
+package github.javaguide.utils;
+
+import github.javaguide.enums.RpcConfigEnum;
+
+import java.util.Properties;
+
+/**
+ * 读取 rpc.properties 中的配置项，文件只会被读取一次
+ */
+public final class RpcConfigUtil {
+
+    private static final Properties PROPERTIES = loadProperties();
+
+    private RpcConfigUtil() {
+    }
+
+    public static String getString(String key, String defaultValue) {
+        String value = PROPERTIES.getProperty(key);
+        return StringUtil.isBlank(value) ? defaultValue : value.trim();
+    }
+
+    public static String getString(RpcConfigEnum rpcConfigEnum, String defaultValue) {
+        return getString(rpcConfigEnum.getPropertyValue(), defaultValue);
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    public static int getInt(RpcConfigEnum rpcConfigEnum, int defaultValue) {
+        return getInt(rpcConfigEnum.getPropertyValue(), defaultValue);
+    }
+
+    public static boolean getBoolean(RpcConfigEnum rpcConfigEnum, boolean defaultValue) {
+        String value = getString(rpcConfigEnum, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    private static Properties loadProperties() {
+        Properties properties = PropertiesFileUtil.readPropertiesFile(RpcConfigEnum.RPC_CONFIG_PATH.getPropertyValue());
+        return properties == null ? new Properties() : properties;
+    }
+}
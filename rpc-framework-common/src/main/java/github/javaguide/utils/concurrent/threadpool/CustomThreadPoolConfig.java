@@ -5,6 +5,8 @@ import lombok.Setter;
 
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -34,4 +36,6 @@ public class CustomThreadPoolConfig {
     private TimeUnit unit = DEFAULT_TIME_UNIT;
     // 使用有界队列
     private BlockingQueue<Runnable> workQueue = new ArrayBlockingQueue<>(BLOCKING_QUEUE_CAPACITY);
+    // 线程和队列都满了时的拒绝策略，默认抛出 RejectedExecutionException
+    private RejectedExecutionHandler rejectedExecutionHandler = new ThreadPoolExecutor.AbortPolicy();
 }
@@ -0,0 +1,21 @@
+package github.javaguide.annotation;
+
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method of a service interface whose requests and responses are flushed right away, instead of being
+ * coalesced with other writes of the connection, see {@code rpc.transport.flush.max-messages}
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+@Inherited
+public @interface RpcLowLatency {
+
+}
@@ -0,0 +1,28 @@
+package github.javaguide.annotation;
+
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method of an {@link RpcService} class, or all methods of the class, as non-blocking. Such methods are called
+ * right on the netty I/O thread instead of being handed to the executor of the service, so they must only compute,
+ * e.g. look up a local cache, and never wait for I/O or locks.
+ * <p>
+ * The I/O thread only knows the method once the request is decoded. With {@code rpc.server.deferred-decode} (the
+ * default) the body is decoded on the default executor, so a version 1 request and the first call of a method on a
+ * version 2 connection run there, without moving on to the profile of the service. Later version 2 calls name the
+ * bound method in the header and stay on the I/O thread.
+ * </p>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Inherited
+public @interface RpcNonBlocking {
+
+}
@@ -30,4 +30,10 @@ public @interface RpcReference {
      */
     String group() default "";
 
+    /**
+     * Milliseconds to wait for a response, default value is 0, which means rpc.client.timeout-ms.
+     * A single method can override it with {@link RpcTimeout}
+     */
+    long timeout() default 0;
+
 }
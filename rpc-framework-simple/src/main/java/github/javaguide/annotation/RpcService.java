@@ -30,4 +30,10 @@ public @interface RpcService {
      */
     String group() default "";
 
+    /**
+     * Executor profile the methods of the service run on, configured by {@code rpc.server.executor.<profile>.*}.
+     * Services sharing a profile share its threads, default value is empty string for the default profile
+     */
+    String executor() default "";
+
 }
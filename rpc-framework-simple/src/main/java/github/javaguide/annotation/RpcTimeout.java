@@ -0,0 +1,25 @@
+package github.javaguide.annotation;
+
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Timeout of one method of a service interface, overrides the timeout of the {@link RpcReference}
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+@Inherited
+public @interface RpcTimeout {
+
+    /**
+     * Milliseconds to wait for the response
+     */
+    long value();
+
+}
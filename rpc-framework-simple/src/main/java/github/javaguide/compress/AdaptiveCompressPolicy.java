@@ -0,0 +1,94 @@
+package github.javaguide.compress;
+
+import github.javaguide.enums.RpcConfigEnum;
+import github.javaguide.utils.RpcConfigUtil;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decide per message whether compressing the body is worth it.
+ * <p>
+ * Bodies below {@link RpcConfigEnum#COMPRESS_MIN_SIZE} are never compressed, gzip makes them bigger and costs more CPU than it saves.
+ * For larger bodies the compression ratio is sampled per key (usually the invoked method), a key whose bodies
+ * don't shrink by at least {@link RpcConfigEnum#COMPRESS_MIN_SAVING} percent is sent uncompressed
+ * and only probed again after {@link #PROBE_INTERVAL} messages.
+ * </p>
+ */
+public class AdaptiveCompressPolicy {
+
+    private static final int SAMPLE_SIZE = 32;
+    private static final int PROBE_INTERVAL = 1024;
+
+    private final int minSize;
+    private final int minSavingPercent;
+    private final Map<String, CompressStats> statsMap = new ConcurrentHashMap<>();
+
+    public AdaptiveCompressPolicy() {
+        this(RpcConfigUtil.getInt(RpcConfigEnum.COMPRESS_MIN_SIZE, 1024),
+                RpcConfigUtil.getInt(RpcConfigEnum.COMPRESS_MIN_SAVING, 10));
+    }
+
+    public AdaptiveCompressPolicy(int minSize, int minSavingPercent) {
+        this.minSize = minSize;
+        this.minSavingPercent = minSavingPercent;
+    }
+
+    /**
+     * @param key        what the compression ratio is tracked by, e.g. interface name and method name
+     * @param bodyLength length of the uncompressed body
+     * @return whether the body should be compressed
+     */
+    public boolean shouldCompress(String key, int bodyLength) {
+        return shouldCompress(key, bodyLength, -1);
+    }
+
+    /**
+     * @param minSize minimum body length for the compressor in use, negative for the configured one
+     * @see Compress#minCompressSize()
+     */
+    public boolean shouldCompress(String key, int bodyLength, int minSize) {
+        if (bodyLength < (minSize < 0 ? this.minSize : minSize)) {
+            return false;
+        }
+        CompressStats stats = statsMap.get(key);
+        return stats == null || stats.shouldCompress();
+    }
+
+    /**
+     * Record the outcome of compressing a body for {@code key}
+     */
+    public void record(String key, int bodyLength, int compressedLength) {
+        CompressStats stats = statsMap.get(key);
+        if (stats == null) {
+            stats = statsMap.computeIfAbsent(key, k -> new CompressStats());
+        }
+        stats.record(bodyLength, compressedLength, minSavingPercent);
+    }
+
+    private static class CompressStats {
+        private final AtomicInteger skipCount = new AtomicInteger();
+        private long bodyBytes;
+        private long compressedBytes;
+        private int samples;
+
+        boolean shouldCompress() {
+            // zero means compression is on, otherwise skip until the counter runs out and then probe again
+            return skipCount.get() <= 0 || skipCount.decrementAndGet() <= 0;
+        }
+
+        synchronized void record(int bodyLength, int compressedLength, int minSavingPercent) {
+            bodyBytes += bodyLength;
+            compressedBytes += compressedLength;
+            if (++samples < SAMPLE_SIZE) {
+                return;
+            }
+            boolean poorRatio = compressedBytes * 100 > bodyBytes * (100 - minSavingPercent);
+            skipCount.set(poorRatio ? PROBE_INTERVAL : 0);
+            bodyBytes = 0;
+            compressedBytes = 0;
+            samples = 0;
+        }
+    }
+}
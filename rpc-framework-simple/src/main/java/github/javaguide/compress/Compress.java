@@ -2,6 +2,12 @@ package github.javaguide.compress;
 
 import github.javaguide.extension.SPI;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 /**
  * @author wangtao .
  * @createTime on 2020/10/3
@@ -14,4 +20,62 @@ public interface Compress {
 
 
     byte[] decompress(byte[] bytes);
+
+    /**
+     * Wrap {@code outputStream} so that everything written to the returned stream ends up compressed in it.
+     * The returned stream must be closed to finish the compressed data, closing it leaves {@code outputStream} open.
+     * The default implementation buffers the whole payload and falls back to {@link #compress(byte[])}.
+     *
+     * @param outputStream the stream receiving the compressed bytes
+     * @return the stream to write uncompressed bytes to
+     */
+    default OutputStream compress(OutputStream outputStream) {
+        return new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+                outputStream.write(compress(toByteArray()));
+            }
+        };
+    }
+
+    /**
+     * Same as {@link #compress(OutputStream)} for compressors that keep per-service state, such as a preset dictionary.
+     *
+     * @param outputStream the stream receiving the compressed bytes
+     * @param serviceName  interface name of the service the message belongs to, may be null
+     * @return the stream to write uncompressed bytes to
+     */
+    default OutputStream compress(OutputStream outputStream, String serviceName) {
+        return compress(outputStream);
+    }
+
+    /**
+     * Bodies shorter than this are not worth compressing with this compressor,
+     * a negative value means the configured {@code rpc.compress.min-size} applies.
+     */
+    default int minCompressSize() {
+        return -1;
+    }
+
+    /**
+     * Wrap {@code inputStream} so that reading the returned stream yields the decompressed bytes.
+     * The returned stream should report the decompressed bytes left through {@link InputStream#available()}
+     * when they are known, readers use it to size their buffers.
+     * The default implementation reads the whole payload and falls back to {@link #decompress(byte[])}.
+     *
+     * @param inputStream the compressed bytes
+     * @return the stream to read decompressed bytes from
+     */
+    default InputStream decompress(InputStream inputStream) {
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            byte[] buffer = new byte[1024];
+            int n;
+            while ((n = inputStream.read(buffer)) > -1) {
+                out.write(buffer, 0, n);
+            }
+            return new ByteArrayInputStream(decompress(out.toByteArray()));
+        } catch (IOException e) {
+            throw new RuntimeException("decompress error", e);
+        }
+    }
 }
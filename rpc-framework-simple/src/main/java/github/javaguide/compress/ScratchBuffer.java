@@ -0,0 +1,33 @@
+package github.javaguide.compress;
+
+/**
+ * A reusable byte array for compressors, meant to be kept per thread.
+ * Arrays bigger than {@link #MAX_CACHED_SIZE} are handed out but not kept, so one huge message doesn't pin its buffer.
+ */
+public class ScratchBuffer {
+
+    private static final int INITIAL_SIZE = 1024 * 4;
+    private static final int MAX_CACHED_SIZE = 1024 * 1024;
+
+    private byte[] bytes = new byte[INITIAL_SIZE];
+
+    /**
+     * Get the cached array with at least {@code size} bytes
+     */
+    public byte[] get(int size) {
+        return bytes.length >= size ? bytes : grow(bytes, size, 0);
+    }
+
+    /**
+     * Replace {@code buffer}, which may be the cached array or one handed out earlier, by a bigger one
+     * that keeps its first {@code keepLength} bytes
+     */
+    public byte[] grow(byte[] buffer, int size, int keepLength) {
+        byte[] newBuffer = new byte[Math.max(size, buffer.length * 2)];
+        System.arraycopy(buffer, 0, newBuffer, 0, keepLength);
+        if (newBuffer.length <= MAX_CACHED_SIZE) {
+            bytes = newBuffer;
+        }
+        return newBuffer;
+    }
+}
@@ -0,0 +1,180 @@
+package github.javaguide.compress.dictionary;
+
+import github.javaguide.compress.Compress;
+import github.javaguide.compress.ScratchBuffer;
+import github.javaguide.enums.RpcConfigEnum;
+import github.javaguide.factory.SingletonFactory;
+import github.javaguide.remoting.constants.RpcConstants;
+import github.javaguide.utils.RpcConfigUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * zlib compression with a preset dictionary per service.
+ * <p>
+ * Message bodies are small and repeat the same interface, method, class and field names, so on their own they
+ * hardly compress. Deflate can refer back into a dictionary holding those strings, which makes bodies of a few
+ * hundred bytes shrink as well. The dictionaries come from {@link DictionaryRegistry} and can be built with
+ * {@link DictionaryTrainer}. Without a dictionary for the service the data is plain zlib.
+ * </p>
+ */
+public class DictionaryCompress implements Compress {
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(Deflater::new);
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+    private static final ThreadLocal<ScratchBuffer> COMPRESSED_BUFFER = ThreadLocal.withInitial(ScratchBuffer::new);
+    private static final ThreadLocal<ScratchBuffer> RAW_BUFFER = ThreadLocal.withInitial(ScratchBuffer::new);
+
+    private final DictionaryRegistry dictionaryRegistry;
+    private final int minCompressSize;
+
+    public DictionaryCompress() {
+        this(SingletonFactory.getInstance(DictionaryRegistry.class));
+    }
+
+    public DictionaryCompress(DictionaryRegistry dictionaryRegistry) {
+        this.dictionaryRegistry = dictionaryRegistry;
+        this.minCompressSize = RpcConfigUtil.getInt(RpcConfigEnum.COMPRESS_DICTIONARY_MIN_SIZE, 64);
+    }
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        return compress(bytes, null);
+    }
+
+    public byte[] compress(byte[] bytes, String serviceName) {
+        if (bytes == null) {
+            throw new NullPointerException("bytes is null");
+        }
+        Deflater deflater = deflater(serviceName);
+        deflater.setInput(bytes);
+        deflater.finish();
+        ScratchBuffer scratchBuffer = COMPRESSED_BUFFER.get();
+        // room for incompressible data and the zlib header and trailer, so one round is enough
+        byte[] out = scratchBuffer.get(bytes.length + (bytes.length >> 12) + 64);
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == out.length) {
+                out = scratchBuffer.grow(out, out.length * 2, length);
+            }
+            length += deflater.deflate(out, length, out.length - length);
+        }
+        return Arrays.copyOf(out, length);
+    }
+
+    @Override
+    public OutputStream compress(OutputStream outputStream) {
+        return compress(outputStream, null);
+    }
+
+    @Override
+    public OutputStream compress(OutputStream outputStream, String serviceName) {
+        return new DeflaterOutputStream(outputStream, deflater(serviceName)) {
+            @Override
+            public void close() throws IOException {
+                // the deflater belongs to the thread and the target stream stays open
+                finish();
+            }
+        };
+    }
+
+    /**
+     * The deflater of this thread, reset and primed with the dictionary of the service
+     */
+    private Deflater deflater(String serviceName) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        byte[] dictionary = dictionaryRegistry.getDictionary(serviceName);
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        return deflater;
+    }
+
+    @Override
+    public int minCompressSize() {
+        return minCompressSize;
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("bytes is null");
+        }
+        byte[] out = inflate(bytes, bytes.length);
+        return Arrays.copyOf(out, INFLATER.get().getTotalOut());
+    }
+
+    /**
+     * The data is decompressed up front into a per-thread buffer, the returned stream must be consumed
+     * before the same thread decompresses again.
+     */
+    @Override
+    public InputStream decompress(InputStream inputStream) {
+        ScratchBuffer scratchBuffer = COMPRESSED_BUFFER.get();
+        try {
+            byte[] buffer = scratchBuffer.get(0);
+            int length = 0;
+            int n;
+            while ((n = inputStream.read(buffer, length, buffer.length - length)) > -1) {
+                length += n;
+                if (length == buffer.length) {
+                    buffer = scratchBuffer.grow(buffer, buffer.length * 2, length);
+                }
+            }
+            byte[] out = inflate(buffer, length);
+            return new ByteArrayInputStream(out, 0, INFLATER.get().getTotalOut());
+        } catch (IOException e) {
+            throw new RuntimeException("dictionary decompress error", e);
+        }
+    }
+
+    /**
+     * Inflate into the per-thread raw buffer, the length of the result is the total out of the inflater.
+     * Like any body the output may not exceed a frame, so a small frame can't inflate without bound
+     */
+    private byte[] inflate(byte[] bytes, int length) {
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(bytes, 0, length);
+        ScratchBuffer scratchBuffer = RAW_BUFFER.get();
+        byte[] out = scratchBuffer.get(Math.min(length * 4, RpcConstants.MAX_FRAME_LENGTH));
+        int outLength = 0;
+        try {
+            while (!inflater.finished()) {
+                if (outLength == out.length) {
+                    out = scratchBuffer.grow(out, out.length * 2, outLength);
+                }
+                int n = inflater.inflate(out, outLength, out.length - outLength);
+                outLength += n;
+                if (outLength > RpcConstants.MAX_FRAME_LENGTH) {
+                    throw new ZipException("zlib data is larger than a frame");
+                }
+                if (n > 0 || inflater.finished()) {
+                    continue;
+                }
+                if (inflater.needsDictionary()) {
+                    byte[] dictionary = dictionaryRegistry.getDictionary(inflater.getAdler());
+                    if (dictionary == null) {
+                        throw new ZipException("unknown compression dictionary " + Integer.toHexString(inflater.getAdler()));
+                    }
+                    inflater.setDictionary(dictionary);
+                } else if (inflater.needsInput()) {
+                    throw new ZipException("zlib data is truncated");
+                }
+            }
+            return out;
+        } catch (ZipException | DataFormatException e) {
+            throw new RuntimeException("dictionary decompress error", e);
+        }
+    }
+}
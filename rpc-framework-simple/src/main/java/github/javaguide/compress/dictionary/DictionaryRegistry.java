@@ -0,0 +1,91 @@
+package github.javaguide.compress.dictionary;
+
+import github.javaguide.enums.RpcConfigEnum;
+import github.javaguide.utils.RpcConfigUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Adler32;
+
+/**
+ * Compression dictionaries by service and by id.
+ * <p>
+ * The id of a dictionary is its Adler-32 checksum, which zlib writes into the header of data compressed with it,
+ * so the receiving side finds the dictionary without knowing the service. Both sides need the same dictionary files,
+ * see {@link RpcConfigEnum#COMPRESS_DICTIONARY_DIR}. A file is named after the service interface, e.g.
+ * {@code github.javaguide.HelloService.dict}, {@code default.dict} is used for services without their own dictionary.
+ * </p>
+ */
+@Slf4j
+public class DictionaryRegistry {
+
+    public static final String DEFAULT_DICTIONARY = "default";
+    private static final String DICTIONARY_SUFFIX = ".dict";
+
+    private final Map<String, byte[]> serviceDictionaries = new ConcurrentHashMap<>();
+    private final Map<Integer, byte[]> idDictionaries = new ConcurrentHashMap<>();
+
+    public DictionaryRegistry() {
+        String directory = RpcConfigUtil.getString(RpcConfigEnum.COMPRESS_DICTIONARY_DIR, null);
+        if (directory != null) {
+            loadDirectory(Paths.get(directory));
+        }
+    }
+
+    /**
+     * Load every {@code *.dict} file of {@code directory}
+     */
+    public void loadDirectory(Path directory) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + DICTIONARY_SUFFIX)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String serviceName = fileName.substring(0, fileName.length() - DICTIONARY_SUFFIX.length());
+                int id = register(serviceName, Files.readAllBytes(file));
+                log.info("load compression dictionary [{}] for [{}], id [{}]", file, serviceName, Integer.toHexString(id));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to load compression dictionaries from " + directory, e);
+        }
+    }
+
+    /**
+     * Use {@code dictionary} for the messages of {@code serviceName}. Data compressed with a dictionary
+     * this one replaces can still be decompressed.
+     *
+     * @return the id of the dictionary
+     */
+    public int register(String serviceName, byte[] dictionary) {
+        int id = dictionaryId(dictionary);
+        byte[] existing = idDictionaries.putIfAbsent(id, dictionary);
+        if (existing != null && !Arrays.equals(existing, dictionary)) {
+            throw new IllegalArgumentException("dictionary of [" + serviceName + "] has the same id as another dictionary");
+        }
+        serviceDictionaries.put(serviceName, dictionary);
+        return id;
+    }
+
+    /**
+     * @return the dictionary of the service, the default dictionary or null
+     */
+    public byte[] getDictionary(String serviceName) {
+        byte[] dictionary = serviceName == null ? null : serviceDictionaries.get(serviceName);
+        return dictionary != null ? dictionary : serviceDictionaries.get(DEFAULT_DICTIONARY);
+    }
+
+    public byte[] getDictionary(int id) {
+        return idDictionaries.get(id);
+    }
+
+    public static int dictionaryId(byte[] dictionary) {
+        Adler32 adler32 = new Adler32();
+        adler32.update(dictionary, 0, dictionary.length);
+        return (int) adler32.getValue();
+    }
+}
@@ -0,0 +1,163 @@
+package github.javaguide.compress.dictionary;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Build a compression dictionary for {@link DictionaryCompress} from sampled message bodies.
+ * <p>
+ * Byte sequences found in many samples (interface, method, class and field names, type tags of the serializer)
+ * are picked greedily by how many samples they help, the most valuable ones go to the end of the dictionary
+ * where deflate reaches them with the shortest distances.
+ * </p>
+ * Usage: {@code DictionaryTrainer <sample directory> <dictionary file> [dictionary size]},
+ * each file of the sample directory holds one serialized body. Name the dictionary file after the service
+ * interface and put it in the {@code rpc.compress.dictionary.dir} of both clients and servers.
+ */
+public class DictionaryTrainer {
+
+    public static final int DEFAULT_DICTIONARY_SIZE = 16 * 1024;
+    /**
+     * sequences shorter than this are cheaper to encode as literals
+     */
+    private static final int SEGMENT_LENGTH = 8;
+    /**
+     * a sequence must occur in at least this share of the samples
+     */
+    private static final int MIN_SAMPLE_PERCENT = 10;
+
+    private final List<byte[]> samples = new ArrayList<>();
+
+    public void addSample(byte[] body) {
+        samples.add(body);
+    }
+
+    public byte[] train(int dictionarySize) {
+        int minSamples = Math.max(2, samples.size() * MIN_SAMPLE_PERCENT / 100);
+        Map<String, Integer> segmentSamples = countSegmentSamples();
+        // the candidates are the longest runs of common segments in the samples
+        Set<String> candidates = new HashSet<>();
+        for (byte[] sample : samples) {
+            String text = new String(sample, StandardCharsets.ISO_8859_1);
+            int i = 0;
+            while (i + SEGMENT_LENGTH <= text.length()) {
+                if (!isCommon(segmentSamples, text, i, minSamples)) {
+                    i++;
+                    continue;
+                }
+                int end = i + 1;
+                while (end + SEGMENT_LENGTH <= text.length() && isCommon(segmentSamples, text, end, minSamples)) {
+                    end++;
+                }
+                candidates.add(text.substring(i, end - 1 + SEGMENT_LENGTH));
+                i = end;
+            }
+        }
+        // greedily take the candidate whose segments not in the dictionary yet occur in the most samples,
+        // scores only drop as the dictionary grows, so a stale score is refreshed when it reaches the head of the queue
+        Set<String> covered = new HashSet<>();
+        PriorityQueue<Candidate> queue = new PriorityQueue<>();
+        for (String candidate : candidates) {
+            queue.add(new Candidate(candidate, score(candidate, segmentSamples, covered)));
+        }
+        List<String> chosen = new ArrayList<>();
+        int size = 0;
+        while (!queue.isEmpty()) {
+            Candidate candidate = queue.poll();
+            long score = score(candidate.text, segmentSamples, covered);
+            if (score == 0 || size + candidate.text.length() > dictionarySize) {
+                continue;
+            }
+            if (score < candidate.score && !queue.isEmpty() && score < queue.peek().score) {
+                queue.add(new Candidate(candidate.text, score));
+                continue;
+            }
+            chosen.add(candidate.text);
+            size += candidate.text.length();
+            for (int i = 0; i + SEGMENT_LENGTH <= candidate.text.length(); i++) {
+                covered.add(candidate.text.substring(i, i + SEGMENT_LENGTH));
+            }
+        }
+        Collections.reverse(chosen);
+        return String.join("", chosen).getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static long score(String candidate, Map<String, Integer> segmentSamples, Set<String> covered) {
+        long score = 0;
+        for (int i = 0; i + SEGMENT_LENGTH <= candidate.length(); i++) {
+            String segment = candidate.substring(i, i + SEGMENT_LENGTH);
+            if (!covered.contains(segment)) {
+                score += segmentSamples.getOrDefault(segment, 0);
+            }
+        }
+        return score;
+    }
+
+    private Map<String, Integer> countSegmentSamples() {
+        Map<String, Integer> segmentSamples = new HashMap<>();
+        for (byte[] sample : samples) {
+            String text = new String(sample, StandardCharsets.ISO_8859_1);
+            Set<String> segments = new HashSet<>();
+            for (int i = 0; i + SEGMENT_LENGTH <= text.length(); i++) {
+                segments.add(text.substring(i, i + SEGMENT_LENGTH));
+            }
+            for (String segment : segments) {
+                segmentSamples.merge(segment, 1, Integer::sum);
+            }
+        }
+        return segmentSamples;
+    }
+
+    private static boolean isCommon(Map<String, Integer> segmentSamples, String text, int index, int minSamples) {
+        return segmentSamples.getOrDefault(text.substring(index, index + SEGMENT_LENGTH), 0) >= minSamples;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: DictionaryTrainer <sample directory> <dictionary file> [dictionary size]");
+            System.exit(1);
+        }
+        int dictionarySize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_DICTIONARY_SIZE;
+        DictionaryTrainer trainer = new DictionaryTrainer();
+        int sampleCount = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(args[0]))) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    trainer.addSample(Files.readAllBytes(file));
+                    sampleCount++;
+                }
+            }
+        }
+        byte[] dictionary = trainer.train(dictionarySize);
+        Files.write(Paths.get(args[1]), dictionary);
+        System.out.printf("trained a %d bytes dictionary from %d samples, id %s%n",
+                dictionary.length, sampleCount, Integer.toHexString(DictionaryRegistry.dictionaryId(dictionary)));
+    }
+
+    private static class Candidate implements Comparable<Candidate> {
+        private final String text;
+        private final long score;
+
+        Candidate(String text, long score) {
+            this.text = text;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            return Long.compare(o.score, score);
+        }
+    }
+}
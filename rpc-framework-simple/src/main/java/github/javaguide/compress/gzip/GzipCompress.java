@@ -1,14 +1,27 @@
 package github.javaguide.compress.gzip;
 
 import github.javaguide.compress.Compress;
+import github.javaguide.compress.ScratchBuffer;
+import github.javaguide.remoting.constants.RpcConstants;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
 
 /**
+ * gzip compression on a per-thread {@link Deflater}/{@link Inflater} pair and scratch buffers,
+ * instead of a new native zlib stream for every message.
+ * <p>
+ * The gzip header and trailer are written and checked here, so the output stays readable by
+ * {@link java.util.zip.GZIPInputStream} and older peers. Only single member gzip data is supported.
+ * </p>
+ *
  * @author wangtao .
  * @createTime on 2020/10/3
  */
@@ -17,18 +30,54 @@ public class GzipCompress implements Compress {
 
 
     private static final int BUFFER_SIZE = 1024 * 4;
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int HEADER_LENGTH = 10;
+    private static final int TRAILER_LENGTH = 8;
+    /**
+     * deflate can't shrink data by more than this, it bounds the size hint taken from a trailer
+     */
+    private static final int MAX_DEFLATE_RATIO = 1032;
+    private static final byte[] HEADER = {(byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private static final ThreadLocal<GzipContext> CONTEXT = ThreadLocal.withInitial(GzipContext::new);
 
     @Override
     public byte[] compress(byte[] bytes) {
         if (bytes == null) {
             throw new NullPointerException("bytes is null");
         }
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream();
-             GZIPOutputStream gzip = new GZIPOutputStream(out)) {
-            gzip.write(bytes);
-            gzip.flush();
-            gzip.finish();
-            return out.toByteArray();
+        GzipContext context = CONTEXT.get();
+        Deflater deflater = context.deflater;
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+        byte[] out = context.deflateBuffer.get(HEADER_LENGTH + deflateBound(bytes.length) + TRAILER_LENGTH);
+        System.arraycopy(HEADER, 0, out, 0, HEADER_LENGTH);
+        int length = HEADER_LENGTH;
+        while (!deflater.finished()) {
+            if (length == out.length) {
+                out = context.deflateBuffer.grow(out, out.length * 2, length);
+            }
+            length += deflater.deflate(out, length, out.length - length);
+        }
+        if (length + TRAILER_LENGTH > out.length) {
+            out = context.deflateBuffer.grow(out, length + TRAILER_LENGTH, length);
+        }
+        CRC32 crc = context.deflateCrc;
+        crc.reset();
+        crc.update(bytes, 0, bytes.length);
+        writeTrailer(out, length, crc.getValue(), bytes.length);
+        return Arrays.copyOf(out, length + TRAILER_LENGTH);
+    }
+
+    @Override
+    public OutputStream compress(OutputStream outputStream) {
+        try {
+            return new DeflatingOutputStream(CONTEXT.get(), outputStream);
         } catch (IOException e) {
             throw new RuntimeException("gzip compress error", e);
         }
@@ -39,16 +88,277 @@ public class GzipCompress implements Compress {
         if (bytes == null) {
             throw new NullPointerException("bytes is null");
         }
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream();
-             GZIPInputStream gunzip = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
-            byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            int offset = readHeader(bytes, bytes.length);
+            int trailerIndex = bytes.length - TRAILER_LENGTH;
+            // the trailer holds the original size, so the output is allocated once
+            byte[] out = new byte[originalSizeHint(bytes, trailerIndex, trailerIndex - offset)];
+            Inflater inflater = CONTEXT.get().inflater;
+            inflater.reset();
+            inflater.setInput(bytes, offset, trailerIndex - offset);
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length < out.length) {
+                    length += inflater.inflate(out, length, out.length - length);
+                } else if (inflater.inflate(new byte[1]) > 0) {
+                    // only the end of the deflate data may be left once the output is full
+                    throw new ZipException("gzip data is larger than its trailer says");
+                }
+                if (!inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ZipException("gzip data is truncated");
+                }
+            }
+            CRC32 crc = CONTEXT.get().inflateCrc;
+            crc.reset();
+            crc.update(out, 0, length);
+            checkTrailer(bytes, trailerIndex, crc.getValue(), length);
+            return out;
+        } catch (IOException | DataFormatException e) {
+            throw new RuntimeException("gzip decompress error", e);
+        }
+    }
+
+    /**
+     * The compressed data is read up front into a per-thread buffer, the returned stream must be consumed
+     * before the same thread decompresses again. Its {@link InputStream#available()} reports the bytes left
+     * according to the gzip trailer, which lets callers size their output buffer once.
+     */
+    @Override
+    public InputStream decompress(InputStream inputStream) {
+        GzipContext context = CONTEXT.get();
+        try {
+            byte[] buffer = context.inflateBuffer.get(BUFFER_SIZE);
+            int length = 0;
             int n;
-            while ((n = gunzip.read(buffer)) > -1) {
-                out.write(buffer, 0, n);
+            while ((n = inputStream.read(buffer, length, buffer.length - length)) > -1) {
+                length += n;
+                if (length == buffer.length) {
+                    buffer = context.inflateBuffer.grow(buffer, buffer.length * 2, length);
+                }
             }
-            return out.toByteArray();
+            return new InflatingInputStream(context, buffer, readHeader(buffer, length), length - TRAILER_LENGTH);
         } catch (IOException e) {
             throw new RuntimeException("gzip decompress error", e);
         }
     }
+
+    /**
+     * Upper bound of the raw deflate output for {@code length} input bytes, same formula as zlib's deflateBound
+     */
+    private static int deflateBound(int length) {
+        return length + (length >> 12) + (length >> 14) + (length >> 25) + 13;
+    }
+
+    /**
+     * @return index of the first deflate byte
+     */
+    private static int readHeader(byte[] bytes, int length) throws ZipException {
+        if (length < HEADER_LENGTH + TRAILER_LENGTH || readUnsignedShort(bytes, 0) != GZIP_MAGIC) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if (bytes[2] != Deflater.DEFLATED) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = bytes[3] & 0xff;
+        int index = HEADER_LENGTH;
+        if ((flags & FEXTRA) == FEXTRA) {
+            index += 2 + readUnsignedShort(bytes, index);
+        }
+        if ((flags & FNAME) == FNAME) {
+            index = skipZeroTerminated(bytes, index, length);
+        }
+        if ((flags & FCOMMENT) == FCOMMENT) {
+            index = skipZeroTerminated(bytes, index, length);
+        }
+        if ((flags & FHCRC) == FHCRC) {
+            index += 2;
+        }
+        if (index > length - TRAILER_LENGTH) {
+            throw new ZipException("gzip header is truncated");
+        }
+        return index;
+    }
+
+    private static int skipZeroTerminated(byte[] bytes, int index, int length) {
+        while (index < length && bytes[index] != 0) {
+            index++;
+        }
+        return index + 1;
+    }
+
+    /**
+     * The size from the trailer sizes the output before anything is inflated, a body never exceeds a frame
+     */
+    private static int originalSizeHint(byte[] bytes, int trailerIndex, int compressedLength) throws ZipException {
+        long size = readUnsignedInt(bytes, trailerIndex + 4);
+        if (size > (long) compressedLength * MAX_DEFLATE_RATIO || size > RpcConstants.MAX_FRAME_LENGTH) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+        return (int) size;
+    }
+
+    private static void checkTrailer(byte[] bytes, int trailerIndex, long crc, long size) throws ZipException {
+        if (readUnsignedInt(bytes, trailerIndex) != crc || readUnsignedInt(bytes, trailerIndex + 4) != (size & 0xffffffffL)) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+    }
+
+    private static void writeTrailer(byte[] bytes, int index, long crc, long size) {
+        writeInt(bytes, index, (int) crc);
+        writeInt(bytes, index + 4, (int) size);
+    }
+
+    private static int readUnsignedShort(byte[] bytes, int index) {
+        return (bytes[index] & 0xff) | ((bytes[index + 1] & 0xff) << 8);
+    }
+
+    private static long readUnsignedInt(byte[] bytes, int index) {
+        return ((long) readUnsignedShort(bytes, index + 2) << 16) | readUnsignedShort(bytes, index);
+    }
+
+    private static void writeInt(byte[] bytes, int index, int value) {
+        bytes[index] = (byte) value;
+        bytes[index + 1] = (byte) (value >> 8);
+        bytes[index + 2] = (byte) (value >> 16);
+        bytes[index + 3] = (byte) (value >> 24);
+    }
+
+    /**
+     * zlib streams and scratch buffers owned by one thread. The zlib streams are reset for every use and never ended.
+     */
+    private static class GzipContext {
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final Inflater inflater = new Inflater(true);
+        private final CRC32 deflateCrc = new CRC32();
+        private final CRC32 inflateCrc = new CRC32();
+        private final ScratchBuffer deflateBuffer = new ScratchBuffer();
+        private final ScratchBuffer inflateBuffer = new ScratchBuffer();
+    }
+
+    /**
+     * Deflate the written bytes into the target stream chunk by chunk, close writes the trailer and leaves the target open
+     */
+    private static class DeflatingOutputStream extends OutputStream {
+        private final Deflater deflater;
+        private final CRC32 crc;
+        private final byte[] buffer;
+        private final OutputStream out;
+        private final byte[] single = new byte[1];
+        private boolean closed;
+
+        DeflatingOutputStream(GzipContext context, OutputStream out) throws IOException {
+            this.deflater = context.deflater;
+            this.crc = context.deflateCrc;
+            this.buffer = context.deflateBuffer.get(BUFFER_SIZE);
+            this.out = out;
+            deflater.reset();
+            crc.reset();
+            out.write(HEADER);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            crc.update(b, off, len);
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+            byte[] trailer = new byte[TRAILER_LENGTH];
+            writeTrailer(trailer, 0, crc.getValue(), deflater.getBytesRead());
+            out.write(trailer);
+        }
+
+        private void deflate() throws IOException {
+            int n = deflater.deflate(buffer, 0, buffer.length);
+            if (n > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+    }
+
+    /**
+     * Inflate a complete gzip member held in a scratch buffer and check its trailer at the end
+     */
+    private static class InflatingInputStream extends InputStream {
+        private final Inflater inflater;
+        private final CRC32 crc;
+        private final byte[] buffer;
+        private final int trailerIndex;
+        private final byte[] single = new byte[1];
+        private int remaining;
+        private boolean eof;
+
+        InflatingInputStream(GzipContext context, byte[] buffer, int offset, int trailerIndex) throws ZipException {
+            this.inflater = context.inflater;
+            this.crc = context.inflateCrc;
+            this.buffer = buffer;
+            this.trailerIndex = trailerIndex;
+            this.remaining = originalSizeHint(buffer, trailerIndex, trailerIndex - offset);
+            inflater.reset();
+            inflater.setInput(buffer, offset, trailerIndex - offset);
+            crc.reset();
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (eof) {
+                return -1;
+            }
+            try {
+                int n;
+                while ((n = inflater.inflate(b, off, len)) == 0) {
+                    if (inflater.finished()) {
+                        eof = true;
+                        checkTrailer(buffer, trailerIndex, crc.getValue(), inflater.getBytesWritten());
+                        return -1;
+                    }
+                    if (inflater.needsInput() || inflater.needsDictionary()) {
+                        throw new ZipException("gzip data is truncated");
+                    }
+                }
+                if (inflater.getBytesWritten() > RpcConstants.MAX_FRAME_LENGTH) {
+                    throw new ZipException("gzip data is larger than a frame");
+                }
+                crc.update(b, off, n);
+                remaining -= n;
+                return n;
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+        }
+
+        @Override
+        public int available() {
+            return eof ? 0 : Math.max(remaining, 0);
+        }
+    }
 }
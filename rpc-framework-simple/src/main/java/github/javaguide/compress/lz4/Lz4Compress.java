@@ -0,0 +1,184 @@
+package github.javaguide.compress.lz4;
+
+import github.javaguide.compress.Compress;
+import github.javaguide.compress.ScratchBuffer;
+import github.javaguide.remoting.constants.RpcConstants;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * LZ4 block compression. It compresses less than gzip but is several times faster in both directions,
+ * which suits RPC traffic better.
+ * <p>
+ * Compressed data is the 4 bytes original length followed by a single LZ4 block. Both come from the network, so the
+ * length is checked before anything is allocated and the block is decoded by the safe decompressor, which never reads
+ * or writes out of bounds on corrupt input.
+ * The streaming variants work on per-thread scratch buffers, so they don't allocate per message.
+ * </p>
+ */
+public class Lz4Compress implements Compress {
+
+    private static final int LENGTH_FIELD_LENGTH = 4;
+
+    private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+    private static final LZ4SafeDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().safeDecompressor();
+
+    private static final ThreadLocal<ScratchBuffer> RAW_BUFFER = ThreadLocal.withInitial(ScratchBuffer::new);
+    private static final ThreadLocal<ScratchBuffer> COMPRESSED_BUFFER = ThreadLocal.withInitial(ScratchBuffer::new);
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("bytes is null");
+        }
+        byte[] out = new byte[LENGTH_FIELD_LENGTH + COMPRESSOR.maxCompressedLength(bytes.length)];
+        writeLength(out, bytes.length);
+        int compressedLength = COMPRESSOR.compress(bytes, 0, bytes.length, out, LENGTH_FIELD_LENGTH);
+        byte[] result = new byte[LENGTH_FIELD_LENGTH + compressedLength];
+        System.arraycopy(out, 0, result, 0, result.length);
+        return result;
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("bytes is null");
+        }
+        try {
+            if (bytes.length < LENGTH_FIELD_LENGTH) {
+                throw new EOFException("lz4 block is truncated");
+            }
+            byte[] out = new byte[checkLength(readLength(bytes))];
+            decompress(bytes, LENGTH_FIELD_LENGTH, bytes.length - LENGTH_FIELD_LENGTH, out);
+            return out;
+        } catch (IOException e) {
+            throw new RuntimeException("lz4 decompress error", e);
+        }
+    }
+
+    @Override
+    public OutputStream compress(OutputStream outputStream) {
+        return new Lz4OutputStream(outputStream);
+    }
+
+    /**
+     * The returned stream is backed by a per-thread buffer, it must be consumed before the same thread decompresses again.
+     */
+    @Override
+    public InputStream decompress(InputStream inputStream) {
+        try {
+            byte[] header = COMPRESSED_BUFFER.get().get(LENGTH_FIELD_LENGTH);
+            readFully(inputStream, header, LENGTH_FIELD_LENGTH);
+            int originalLength = checkLength(readLength(header));
+            // the compressed block is read into one buffer and decompressed into the other
+            byte[] compressed = header;
+            int compressedLength = 0;
+            int n;
+            while ((n = inputStream.read(compressed, compressedLength, compressed.length - compressedLength)) > -1) {
+                compressedLength += n;
+                if (compressedLength == compressed.length) {
+                    compressed = COMPRESSED_BUFFER.get().grow(compressed, compressed.length * 2, compressedLength);
+                }
+            }
+            byte[] out = RAW_BUFFER.get().get(originalLength);
+            decompress(compressed, 0, compressedLength, out, originalLength);
+            return new ByteArrayInputStream(out, 0, originalLength);
+        } catch (IOException e) {
+            throw new RuntimeException("lz4 decompress error", e);
+        }
+    }
+
+    private static void decompress(byte[] compressed, int offset, int length, byte[] out) throws IOException {
+        decompress(compressed, offset, length, out, out.length);
+    }
+
+    /**
+     * Decompress the block into the first {@code originalLength} bytes of {@code out}, failing unless it yields exactly that many
+     */
+    private static void decompress(byte[] compressed, int offset, int length, byte[] out, int originalLength) throws IOException {
+        int decompressedLength = DECOMPRESSOR.decompress(compressed, offset, length, out, 0, originalLength);
+        if (decompressedLength != originalLength) {
+            throw new IOException("lz4 block decompressed to " + decompressedLength + " bytes, expected " + originalLength);
+        }
+    }
+
+    /**
+     * A body can't be bigger than a frame, a bigger or negative length means the data is corrupt
+     */
+    private static int checkLength(int originalLength) throws IOException {
+        if (originalLength < 0 || originalLength > RpcConstants.MAX_FRAME_LENGTH) {
+            throw new IOException("invalid lz4 original length: " + originalLength);
+        }
+        return originalLength;
+    }
+
+    private static void readFully(InputStream inputStream, byte[] bytes, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = inputStream.read(bytes, read, length - read);
+            if (n < 0) {
+                throw new EOFException("lz4 block is truncated");
+            }
+            read += n;
+        }
+    }
+
+    private static void writeLength(byte[] bytes, int length) {
+        bytes[0] = (byte) (length >>> 24);
+        bytes[1] = (byte) (length >>> 16);
+        bytes[2] = (byte) (length >>> 8);
+        bytes[3] = (byte) length;
+    }
+
+    private static int readLength(byte[] bytes) {
+        return ((bytes[0] & 0xff) << 24) | ((bytes[1] & 0xff) << 16) | ((bytes[2] & 0xff) << 8) | (bytes[3] & 0xff);
+    }
+
+    /**
+     * Collect the written bytes in the scratch buffer and compress them as one block on close
+     */
+    private static class Lz4OutputStream extends OutputStream {
+        private final OutputStream out;
+        private final ScratchBuffer scratchBuffer = RAW_BUFFER.get();
+        private byte[] buffer = scratchBuffer.get(0);
+        private int count;
+
+        Lz4OutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            byte[] compressed = COMPRESSED_BUFFER.get().get(LENGTH_FIELD_LENGTH + COMPRESSOR.maxCompressedLength(count));
+            writeLength(compressed, count);
+            int compressedLength = COMPRESSOR.compress(buffer, 0, count, compressed, LENGTH_FIELD_LENGTH);
+            out.write(compressed, 0, LENGTH_FIELD_LENGTH + compressedLength);
+        }
+
+        private void ensureCapacity(int size) {
+            if (size > buffer.length) {
+                buffer = scratchBuffer.grow(buffer, size, count);
+            }
+        }
+    }
+}
@@ -26,6 +26,14 @@ public class RpcServiceConfig {
      * when the interface has multiple implementation classes, distinguish by group
      */
     private String group = "";
+    /**
+     * milliseconds a client waits for a response, 0 means the configured default
+     */
+    private long timeout;
+    /**
+     * executor profile the service runs on, null or empty for the default profile
+     */
+    private String executor;
 
     /**
      * target service
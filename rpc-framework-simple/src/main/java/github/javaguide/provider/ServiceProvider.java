@@ -1,6 +1,8 @@
 package github.javaguide.provider;
 
 import github.javaguide.config.RpcServiceConfig;
+import github.javaguide.remoting.dto.RpcRequest;
+import github.javaguide.remoting.handler.ServiceMethod;
 
 /**
  * store and provide service object.
@@ -21,6 +23,12 @@ public interface ServiceProvider {
      */
     Object getService(String rpcServiceName);
 
+    /**
+     * @param methodKey the service and the signature of the method, see {@link RpcRequest#getMethodKey()}
+     * @return the prepared method, or null if no added service has it
+     */
+    ServiceMethod getServiceMethod(String methodKey);
+
     /**
      * @param rpcServiceConfig rpc service related attributes
      */
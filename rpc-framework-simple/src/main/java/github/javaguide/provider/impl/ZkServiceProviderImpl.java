@@ -7,9 +7,12 @@ import github.javaguide.exception.RpcException;
 import github.javaguide.extension.ExtensionLoader;
 import github.javaguide.provider.ServiceProvider;
 import github.javaguide.registry.ServiceRegistry;
+import github.javaguide.remoting.dto.RpcRequest;
+import github.javaguide.remoting.handler.ServiceMethod;
 import github.javaguide.remoting.transport.netty.server.NettyRpcServer;
 import lombok.extern.slf4j.Slf4j;
 
+import java.lang.reflect.Method;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
@@ -30,6 +33,10 @@ public class ZkServiceProviderImpl implements ServiceProvider {
      */
     private final Map<String, Object> serviceMap;
     private final Set<String> registeredService;
+    /**
+     * key: 方法签名（rpc服务名#方法名(参数类型,)）；value: 准备好直接调用的服务方法，添加服务时就建好，请求不用再反射查找
+     */
+    private final Map<String, ServiceMethod> serviceMethodMap;
 
     /**
      * 这个serviceRegistry是读取spi读出来的，写在固定的配置文件里面
@@ -40,6 +47,7 @@ public class ZkServiceProviderImpl implements ServiceProvider {
     public ZkServiceProviderImpl() {
         serviceMap = new ConcurrentHashMap<>();
         registeredService = ConcurrentHashMap.newKeySet();
+        serviceMethodMap = new ConcurrentHashMap<>();
 
         /**
          * spi生成扩展类
@@ -59,6 +67,13 @@ public class ZkServiceProviderImpl implements ServiceProvider {
         }
         registeredService.add(rpcServiceName);
         serviceMap.put(rpcServiceName, rpcServiceConfig.getService());
+        // 为服务接口的每个方法建好调用器
+        Class<?> serviceInterface = rpcServiceConfig.getService().getClass().getInterfaces()[0];
+        for (Method method : serviceInterface.getMethods()) {
+            String methodKey = RpcRequest.methodKey(rpcServiceName, method.getName(), method.getParameterTypes());
+            serviceMethodMap.put(methodKey, new ServiceMethod(serviceInterface.getName(), rpcServiceConfig.getService(), method,
+                    rpcServiceConfig.getExecutor()));
+        }
         log.info("Add service: {} and interfaces:{}", rpcServiceName, rpcServiceConfig.getService().getClass().getInterfaces());
     }
 
@@ -72,6 +87,11 @@ public class ZkServiceProviderImpl implements ServiceProvider {
         return service;
     }
 
+    @Override
+    public ServiceMethod getServiceMethod(String methodKey) {
+        return serviceMethodMap.get(methodKey);
+    }
+
     /**
      * publishService方法是用于发布服务的。它首先获取本地主机的IP地址，
      * 然后将服务添加到服务提供者中，最后在服务注册中心注册服务，服务的地址是本地主机的IP地址和Netty服务器的端口。
@@ -1,6 +1,7 @@
 package github.javaguide.proxy;
 
 import github.javaguide.config.RpcServiceConfig;
+import github.javaguide.enums.RpcConfigEnum;
 import github.javaguide.enums.RpcErrorMessageEnum;
 import github.javaguide.enums.RpcResponseCodeEnum;
 import github.javaguide.exception.RpcException;
@@ -8,15 +9,21 @@ import github.javaguide.remoting.dto.RpcRequest;
 import github.javaguide.remoting.dto.RpcResponse;
 import github.javaguide.remoting.transport.RpcRequestTransport;
 import github.javaguide.remoting.transport.netty.client.NettyRpcClient;
-import github.javaguide.remoting.transport.socket.SocketRpcClient;
-import lombok.SneakyThrows;
+import github.javaguide.utils.RpcConfigUtil;
+import github.javaguide.utils.concurrent.threadpool.CustomThreadPoolConfig;
+import github.javaguide.utils.concurrent.threadpool.ThreadPoolFactoryUtil;
 import lombok.extern.slf4j.Slf4j;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.UUID;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * Dynamic proxy class.
@@ -34,63 +41,98 @@ public class RpcClientProxy implements InvocationHandler {
     // 用于向服务器发送请求，有两种实现方式：socket和netty
     private final RpcRequestTransport rpcRequestTransport;
     private final RpcServiceConfig rpcServiceConfig;
+    // 返回CompletableFuture的方法在这个executor上完成future，调用方的回调不会跑在netty的I/O线程上
+    private final Executor callbackExecutor;
+    // 每个代理方法预先计算好的请求信息
+    private final Map<Method, RpcMethodDescriptor> methodDescriptors = new ConcurrentHashMap<>();
 
     // 构造函数，初始化rpcRequestTransport和rpcServiceConfig
     public RpcClientProxy(RpcRequestTransport rpcRequestTransport, RpcServiceConfig rpcServiceConfig) {
-        this.rpcRequestTransport = rpcRequestTransport;
-        this.rpcServiceConfig = rpcServiceConfig;
+        this(rpcRequestTransport, rpcServiceConfig, defaultCallbackExecutor());
     }
 
     // 构造函数，只初始化rpcRequestTransport，rpcServiceConfig使用默认配置
     public RpcClientProxy(RpcRequestTransport rpcRequestTransport) {
+        this(rpcRequestTransport, new RpcServiceConfig());
+    }
+
+    // 构造函数，指定完成异步调用结果的executor
+    public RpcClientProxy(RpcRequestTransport rpcRequestTransport, RpcServiceConfig rpcServiceConfig, Executor callbackExecutor) {
         this.rpcRequestTransport = rpcRequestTransport;
-        this.rpcServiceConfig = new RpcServiceConfig();
+        this.rpcServiceConfig = rpcServiceConfig;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * rpc.client.callback-threads个线程的共享线程池，配置为0时直接在收到响应的线程上完成future
+     */
+    private static Executor defaultCallbackExecutor() {
+        int threads = RpcConfigUtil.getInt(RpcConfigEnum.CLIENT_CALLBACK_THREADS, Runtime.getRuntime().availableProcessors());
+        if (threads <= 0) {
+            return Runnable::run;
+        }
+        CustomThreadPoolConfig customThreadPoolConfig = new CustomThreadPoolConfig();
+        customThreadPoolConfig.setCorePoolSize(threads);
+        customThreadPoolConfig.setMaximumPoolSize(threads);
+        // 回调很短，但可能同时有成百上千个调用在途，所以不限制队列长度
+        customThreadPoolConfig.setWorkQueue(new LinkedBlockingQueue<>());
+        return ThreadPoolFactoryUtil.createCustomThreadPoolIfAbsent(customThreadPoolConfig, "rpc-client-callback", true);
     }
 
     // 获取代理对象
     @SuppressWarnings("unchecked")
     public <T> T getProxy(Class<T> clazz) {
+        for (Method method : clazz.getMethods()) {
+            descriptor(method);
+        }
         return (T) Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[]{clazz}, this);
     }
 
     // 当使用代理对象调用方法时，实际上调用的是这个方法
     // 代理对象是通过getProxy方法获取的对象
-    @SneakyThrows
-    @SuppressWarnings("unchecked")
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) {
-        log.info("invoked method: [{}]", method.getName());
-        // 构建RpcRequest对象
-        RpcRequest rpcRequest = RpcRequest.builder().methodName(method.getName())
-                .parameters(args)
-                .interfaceName(method.getDeclaringClass().getName())
-                .paramTypes(method.getParameterTypes())
-                .requestId(UUID.randomUUID().toString())
-                .group(rpcServiceConfig.getGroup())
-                .version(rpcServiceConfig.getVersion())
-                .build();
-        RpcResponse<Object> rpcResponse = null;
-
-        /**
-         * todo 这里是不是少了一个连接池？传输层的连接池？
-         * 可能要看一下netty这里的知识才行
-         */
+        return invoke(descriptor(method), args);
+    }
+
+    // 获取字节码生成的stub对象，方法直接调用传输层，不经过反射；接口不是public时退回到动态代理
+    public <T> T getStub(Class<T> clazz) {
+        return RpcStubGenerator.newStub(clazz, this);
+    }
+
+    // 代理对象和stub对象最终都调用这个方法
+    @SuppressWarnings("unchecked")
+    Object invoke(RpcMethodDescriptor descriptor, Object[] args) {
+        log.debug("invoked method: [{}]", descriptor.getMethodName());
+        switch (descriptor.getInvocationType()) {
+            case FUTURE:
+                // 接口方法声明了CompletableFuture或CompletionStage返回值，直接返回在途的future，不阻塞调用线程
+                return invokeAsync(descriptor, descriptor.newRequest(args), false);
+            case PUBLISHER:
+                // 返回Publisher的方法在订阅者请求数据时才发起调用，连接不可写时请求会等待；每次订阅都是一次新的调用
+                return new RpcPublisher<>(() -> invokeAsync(descriptor, descriptor.newRequest(args), true));
+            default:
+                break;
+        }
+        // 构建RpcRequest对象，只需要填入参数
+        RpcRequest rpcRequest = descriptor.newRequest(args);
+        RpcResponse<Object> rpcResponse;
 
+        Object sent;
         // 如果rpcRequestTransport是NettyRpcClient类型，使用CompletableFuture异步获取结果
         if (rpcRequestTransport instanceof NettyRpcClient) {
             /**
              * 这里就涉及到netty的知识了
              * 送过去的request里面，只要标明白了，interface、method、args就行了，别的都很好说
              */
-            CompletableFuture<RpcResponse<Object>> completableFuture = (CompletableFuture<RpcResponse<Object>>)
-                    rpcRequestTransport.sendRpcRequest(rpcRequest);
-            rpcResponse = completableFuture.get();
-        }
-
-        // 如果rpcRequestTransport是SocketRpcClient类型，直接获取结果
-        if (rpcRequestTransport instanceof SocketRpcClient) {
-            rpcResponse = (RpcResponse<Object>) rpcRequestTransport.sendRpcRequest(rpcRequest);
+            // 超时由NettyRpcClient的时间轮负责，到时future会以异常结束，这里不会一直阻塞
+            sent = ((NettyRpcClient) rpcRequestTransport).sendRpcRequest(rpcRequest, descriptor.getTimeoutMillis());
+        } else {
+            // SocketRpcClient等同步的传输方式直接返回结果，异步的传输方式返回future
+            sent = rpcRequestTransport.sendRpcRequest(rpcRequest);
         }
+        rpcResponse = sent instanceof CompletableFuture
+                ? await((CompletableFuture<RpcResponse<Object>>) sent) : (RpcResponse<Object>) sent;
 
         // 检查响应结果
         this.check(rpcResponse, rpcRequest);
@@ -98,13 +140,64 @@ public class RpcClientProxy implements InvocationHandler {
         return rpcResponse.getData();
     }
 
+    // 等待响应；超时和连接断开时future以RpcException结束，原样抛给调用方，JDK代理不会把它包成UndeclaredThrowableException
+    private static RpcResponse<Object> await(CompletableFuture<RpcResponse<Object>> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RpcException ? (RpcException) cause : new RpcException(cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RpcException(e.getMessage(), e);
+        }
+    }
+
+    // 每个方法的描述只在第一次调用时计算一次
+    RpcMethodDescriptor descriptor(Method method) {
+        RpcMethodDescriptor descriptor = methodDescriptors.get(method);
+        if (descriptor == null) {
+            descriptor = methodDescriptors.computeIfAbsent(method, m -> new RpcMethodDescriptor(m, rpcServiceConfig));
+        }
+        return descriptor;
+    }
+
+    // 异步调用，future在callbackExecutor上以响应数据或异常完成
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<Object> invokeAsync(RpcMethodDescriptor descriptor, RpcRequest rpcRequest, boolean whenWritable) {
+        CompletableFuture<RpcResponse<Object>> responseFuture;
+        try {
+            if (rpcRequestTransport instanceof NettyRpcClient) {
+                NettyRpcClient nettyRpcClient = (NettyRpcClient) rpcRequestTransport;
+                responseFuture = whenWritable ? nettyRpcClient.sendRpcRequestWhenWritable(rpcRequest, descriptor.getTimeoutMillis())
+                        : nettyRpcClient.sendRpcRequest(rpcRequest, descriptor.getTimeoutMillis());
+            } else {
+                // socket等同步的传输方式在这里就完成了调用
+                responseFuture = CompletableFuture.completedFuture((RpcResponse<Object>) rpcRequestTransport.sendRpcRequest(rpcRequest));
+            }
+        } catch (RuntimeException e) {
+            // 例如找不到服务，同样通过future告诉调用方
+            responseFuture = new CompletableFuture<>();
+            responseFuture.completeExceptionally(e);
+        }
+        // 用handleAsync而不是thenApplyAsync，异常结束时也在callbackExecutor上完成
+        return responseFuture.handleAsync((rpcResponse, cause) -> {
+            if (cause != null) {
+                throw cause instanceof CompletionException ? (CompletionException) cause : new CompletionException(cause);
+            }
+            this.check(rpcResponse, rpcRequest);
+            return rpcResponse.getData();
+        }, callbackExecutor);
+    }
+
     // 检查响应结果，如果响应结果为空，或者请求id和响应id不匹配，或者响应状态码不是成功，都抛出异常
     private void check(RpcResponse<Object> rpcResponse, RpcRequest rpcRequest) {
         if (rpcResponse == null) {
             throw new RpcException(RpcErrorMessageEnum.SERVICE_INVOCATION_FAILURE, INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
         }
 
-        if (!rpcRequest.getRequestId().equals(rpcResponse.getRequestId())) {
+        // the netty client correlates by the frame header and leaves the body id out
+        if (rpcRequest.getRequestId() != null && !rpcRequest.getRequestId().equals(rpcResponse.getRequestId())) {
             throw new RpcException(RpcErrorMessageEnum.REQUEST_NOT_MATCH_RESPONSE, INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
         }
 
@@ -0,0 +1,79 @@
+package github.javaguide.proxy;
+
+import github.javaguide.annotation.RpcLowLatency;
+import github.javaguide.annotation.RpcTimeout;
+import github.javaguide.config.RpcServiceConfig;
+import github.javaguide.remoting.dto.RpcRequest;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.reactivestreams.Publisher;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Everything about a proxied method that doesn't change between calls, computed once per proxy and method,
+ * so a call only has to fill in the arguments
+ */
+@Getter(AccessLevel.PACKAGE)
+final class RpcMethodDescriptor {
+
+    /**
+     * how the proxy hands the result to the caller
+     */
+    enum InvocationType {
+        /**
+         * block until the response arrives
+         */
+        SYNC,
+        /**
+         * return the in-flight CompletableFuture
+         */
+        FUTURE,
+        /**
+         * return an {@link RpcPublisher} that calls on demand
+         */
+        PUBLISHER
+    }
+
+    private final String interfaceName;
+    private final String methodName;
+    private final Class<?>[] paramTypes;
+    private final String group;
+    private final String version;
+    private final String rpcServiceName;
+    private final String methodKey;
+    private final long timeoutMillis;
+    private final boolean lowLatency;
+    private final InvocationType invocationType;
+
+    RpcMethodDescriptor(Method method, RpcServiceConfig rpcServiceConfig) {
+        this.interfaceName = method.getDeclaringClass().getName();
+        this.methodName = method.getName();
+        this.paramTypes = method.getParameterTypes();
+        this.group = rpcServiceConfig.getGroup();
+        this.version = rpcServiceConfig.getVersion();
+        this.rpcServiceName = interfaceName + group + version;
+        this.methodKey = RpcRequest.methodKey(rpcServiceName, methodName, paramTypes);
+        // @RpcTimeout on the method wins over the timeout of the reference, 0 means the default of the transport
+        RpcTimeout rpcTimeout = method.getAnnotation(RpcTimeout.class);
+        this.timeoutMillis = rpcTimeout != null ? rpcTimeout.value() : rpcServiceConfig.getTimeout();
+        this.lowLatency = method.isAnnotationPresent(RpcLowLatency.class);
+        Class<?> returnType = method.getReturnType();
+        if (returnType == CompletableFuture.class || returnType == CompletionStage.class) {
+            this.invocationType = InvocationType.FUTURE;
+        } else if (returnType == Publisher.class) {
+            this.invocationType = InvocationType.PUBLISHER;
+        } else {
+            this.invocationType = InvocationType.SYNC;
+        }
+    }
+
+    /**
+     * @return a new request, the serializers only read the shared parameter types
+     */
+    RpcRequest newRequest(Object[] args) {
+        return new RpcRequest(null, interfaceName, methodName, args, paramTypes, version, group, rpcServiceName, methodKey, lowLatency);
+    }
+}
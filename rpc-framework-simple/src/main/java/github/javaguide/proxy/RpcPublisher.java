@@ -0,0 +1,101 @@
+package github.javaguide.proxy;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Publisher of the result of a remote call, returned by {@link RpcClientProxy} for service methods declaring
+ * {@link Publisher}.
+ * <p>
+ * It is cold and demand-driven: every subscription makes its own call, and only once the subscriber requests the
+ * result. A call publishes at most one element, the response data, then completes; a null result completes without
+ * element. Cancelling drops the result, the request itself is expired by its timeout.
+ * </p>
+ *
+ * @param <T> type of the response data
+ */
+public final class RpcPublisher<T> implements Publisher<T> {
+
+    private final Supplier<CompletableFuture<T>> call;
+
+    /**
+     * @param call starts the remote call, invoked on the first request of each subscription
+     */
+    public RpcPublisher(Supplier<CompletableFuture<T>> call) {
+        this.call = call;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        subscriber.onSubscribe(new CallSubscription<>(subscriber, call));
+    }
+
+    private static final class CallSubscription<T> implements Subscription {
+        private final Subscriber<? super T> subscriber;
+        private final Supplier<CompletableFuture<T>> call;
+        private final AtomicBoolean started = new AtomicBoolean();
+        /**
+         * set by the first terminal signal or by cancel, nothing is signalled after it
+         */
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile CompletableFuture<T> future;
+
+        CallSubscription(Subscriber<? super T> subscriber, Supplier<CompletableFuture<T>> call) {
+            this.subscriber = subscriber;
+            this.call = call;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                if (done.compareAndSet(false, true)) {
+                    subscriber.onError(new IllegalArgumentException("non-positive request: " + n));
+                }
+                return;
+            }
+            if (done.get() || !started.compareAndSet(false, true)) {
+                return;
+            }
+            CompletableFuture<T> callFuture;
+            try {
+                callFuture = call.get();
+            } catch (RuntimeException e) {
+                if (done.compareAndSet(false, true)) {
+                    subscriber.onError(e);
+                }
+                return;
+            }
+            future = callFuture;
+            callFuture.whenComplete((value, cause) -> {
+                if (!done.compareAndSet(false, true)) {
+                    return;
+                }
+                if (cause != null) {
+                    subscriber.onError(cause instanceof CompletionException && cause.getCause() != null ? cause.getCause() : cause);
+                    return;
+                }
+                if (value != null) {
+                    subscriber.onNext(value);
+                }
+                subscriber.onComplete();
+            });
+        }
+
+        @Override
+        public void cancel() {
+            done.set(true);
+            CompletableFuture<T> callFuture = future;
+            if (callFuture != null) {
+                callFuture.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package github.javaguide.proxy;
+
+import java.lang.reflect.Method;
+
+/**
+ * Base class of the stubs generated by {@link RpcStubGenerator}.
+ * <p>
+ * A generated method passes the index of its descriptor and its arguments straight to {@link #invoke(int, Object[])},
+ * there is no {@link java.lang.reflect.InvocationHandler} and no lookup of the called {@link Method}.
+ * </p>
+ */
+public abstract class RpcStub {
+
+    private final RpcClientProxy rpcClientProxy;
+    private final RpcMethodDescriptor[] descriptors;
+
+    /**
+     * @param methods the stubbed methods, in the order of the indexes the generated methods pass
+     */
+    protected RpcStub(RpcClientProxy rpcClientProxy, Method[] methods) {
+        this.rpcClientProxy = rpcClientProxy;
+        this.descriptors = new RpcMethodDescriptor[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            descriptors[i] = rpcClientProxy.descriptor(methods[i]);
+        }
+    }
+
+    protected final Object invoke(int index, Object[] args) {
+        return rpcClientProxy.invoke(descriptors[index], args);
+    }
+}
@@ -0,0 +1,214 @@
+package github.javaguide.proxy;
+
+import github.javaguide.exception.RpcException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates a concrete class per service interface at runtime, instead of a {@link java.lang.reflect.Proxy}.
+ * <p>
+ * The generated class extends {@link RpcStub} and implements every abstract method of the interface as
+ * {@code return (R) invoke(index, new Object[]{args...})}, unboxing primitive results. The call site is a plain
+ * virtual call the JIT can inline. The bytecode is written with the ASM copy that ships with spring-core, the class
+ * is defined by a class loader below the one of the interface. One class is generated per interface and shared by
+ * all stubs of that interface.
+ * </p>
+ * Non-public interfaces can't be implemented from another class loader, they get a dynamic proxy instead.
+ */
+@Slf4j
+public final class RpcStubGenerator {
+    private static final String STUB_INTERNAL_NAME = Type.getInternalName(RpcStub.class);
+    private static final String CONSTRUCTOR_DESCRIPTOR = Type.getMethodDescriptor(Type.VOID_TYPE,
+            Type.getType(RpcClientProxy.class), Type.getType(Method[].class));
+    private static final String INVOKE_DESCRIPTOR = Type.getMethodDescriptor(Type.getType(Object.class),
+            Type.INT_TYPE, Type.getType(Object[].class));
+    private static final AtomicInteger STUB_COUNT = new AtomicInteger();
+
+    private static final Map<Class<?>, StubClass> STUB_CLASSES = new ConcurrentHashMap<>();
+
+    private RpcStubGenerator() {
+    }
+
+    public static <T> T newStub(Class<T> clazz, RpcClientProxy rpcClientProxy) {
+        if (!clazz.isInterface() || !Modifier.isPublic(clazz.getModifiers())) {
+            return rpcClientProxy.getProxy(clazz);
+        }
+        StubClass stubClass = STUB_CLASSES.computeIfAbsent(clazz, RpcStubGenerator::generate);
+        try {
+            return clazz.cast(stubClass.type.getConstructor(RpcClientProxy.class, Method[].class)
+                    .newInstance(rpcClientProxy, stubClass.methods));
+        } catch (ReflectiveOperationException e) {
+            throw new RpcException("create stub of " + clazz.getName() + " failed", e);
+        }
+    }
+
+    private static StubClass generate(Class<?> clazz) {
+        Method[] methods = stubbedMethods(clazz);
+        String name = clazz.getName() + "$$RpcStub" + STUB_COUNT.incrementAndGet();
+        String internalName = name.replace('.', '/');
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, internalName, null,
+                STUB_INTERNAL_NAME, new String[]{Type.getInternalName(clazz)});
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", CONSTRUCTOR_DESCRIPTOR, null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitVarInsn(Opcodes.ALOAD, 2);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, STUB_INTERNAL_NAME, "<init>", CONSTRUCTOR_DESCRIPTOR, false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        for (int i = 0; i < methods.length; i++) {
+            generateMethod(cw, internalName, methods[i], i);
+        }
+        cw.visitEnd();
+
+        StubClassLoader stubClassLoader = new StubClassLoader(clazz.getClassLoader());
+        log.info("generated rpc stub [{}]", name);
+        return new StubClass(stubClassLoader.define(name, cw.toByteArray()), methods);
+    }
+
+    /**
+     * The abstract methods of the interface, each signature once
+     */
+    private static Method[] stubbedMethods(Class<?> clazz) {
+        List<Method> methods = new ArrayList<>();
+        Set<String> signatures = new HashSet<>();
+        for (Method method : clazz.getMethods()) {
+            if (Modifier.isAbstract(method.getModifiers())
+                    && signatures.add(method.getName() + Type.getMethodDescriptor(method))) {
+                methods.add(method);
+            }
+        }
+        return methods.toArray(new Method[0]);
+    }
+
+    private static void generateMethod(ClassWriter cw, String internalName, Method method, int index) {
+        Class<?>[] exceptionTypes = method.getExceptionTypes();
+        String[] exceptions = new String[exceptionTypes.length];
+        for (int i = 0; i < exceptionTypes.length; i++) {
+            exceptions[i] = Type.getInternalName(exceptionTypes[i]);
+        }
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, method.getName(), Type.getMethodDescriptor(method), null, exceptions);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitLdcInsn(index);
+        Type[] argumentTypes = Type.getArgumentTypes(method);
+        if (argumentTypes.length == 0) {
+            // like a dynamic proxy, a method without parameters is called with null
+            mv.visitInsn(Opcodes.ACONST_NULL);
+        } else {
+            mv.visitLdcInsn(argumentTypes.length);
+            mv.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Object");
+            int slot = 1;
+            for (int i = 0; i < argumentTypes.length; i++) {
+                Type argumentType = argumentTypes[i];
+                mv.visitInsn(Opcodes.DUP);
+                mv.visitLdcInsn(i);
+                mv.visitVarInsn(argumentType.getOpcode(Opcodes.ILOAD), slot);
+                box(mv, argumentType);
+                mv.visitInsn(Opcodes.AASTORE);
+                slot += argumentType.getSize();
+            }
+        }
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, internalName, "invoke", INVOKE_DESCRIPTOR, false);
+        Type returnType = Type.getReturnType(method);
+        if (returnType.getSort() == Type.VOID) {
+            mv.visitInsn(Opcodes.POP);
+        } else {
+            unbox(mv, returnType);
+        }
+        mv.visitInsn(returnType.getOpcode(Opcodes.IRETURN));
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void box(MethodVisitor mv, Type type) {
+        String wrapper = wrapper(type);
+        if (wrapper != null) {
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, wrapper, "valueOf",
+                    Type.getMethodDescriptor(Type.getObjectType(wrapper), type), false);
+        }
+    }
+
+    private static void unbox(MethodVisitor mv, Type type) {
+        String wrapper = wrapper(type);
+        if (wrapper == null) {
+            mv.visitTypeInsn(Opcodes.CHECKCAST, type.getInternalName());
+            return;
+        }
+        mv.visitTypeInsn(Opcodes.CHECKCAST, wrapper);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, wrapper, type.getClassName() + "Value",
+                Type.getMethodDescriptor(type), false);
+    }
+
+    /**
+     * @return the internal name of the wrapper class of a primitive type, null for reference types
+     */
+    private static String wrapper(Type type) {
+        switch (type.getSort()) {
+            case Type.BOOLEAN:
+                return "java/lang/Boolean";
+            case Type.CHAR:
+                return "java/lang/Character";
+            case Type.BYTE:
+                return "java/lang/Byte";
+            case Type.SHORT:
+                return "java/lang/Short";
+            case Type.INT:
+                return "java/lang/Integer";
+            case Type.FLOAT:
+                return "java/lang/Float";
+            case Type.LONG:
+                return "java/lang/Long";
+            case Type.DOUBLE:
+                return "java/lang/Double";
+            default:
+                return null;
+        }
+    }
+
+    private static final class StubClass {
+        private final Class<?> type;
+        private final Method[] methods;
+
+        StubClass(Class<?> type, Method[] methods) {
+            this.type = type;
+            this.methods = methods;
+        }
+    }
+
+    /**
+     * Sees the classes of the interface through its parent, and the framework classes if they live elsewhere
+     */
+    private static final class StubClassLoader extends ClassLoader {
+
+        StubClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            return RpcStub.class.getClassLoader().loadClass(name);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -14,6 +14,8 @@ import org.apache.curator.framework.CuratorFramework;
 
 import java.net.InetSocketAddress;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 基于zookeeper的服务发现实现类
@@ -25,6 +27,8 @@ import java.util.List;
 public class ZkServiceDiscoveryImpl implements ServiceDiscovery {
     // 负载均衡器
     private final LoadBalance loadBalance;
+    // 解析过的服务地址，避免每次调用都拆分字符串和解析主机名，同一个服务端也总是得到同一个地址对象
+    private final Map<String, InetSocketAddress> serviceAddresses = new ConcurrentHashMap<>();
 
     // 构造函数中初始化负载均衡器
     public ZkServiceDiscoveryImpl() {
@@ -52,11 +56,21 @@ public class ZkServiceDiscoveryImpl implements ServiceDiscovery {
         // 使用负载均衡器选择一个服务地址
         String targetServiceUrl = loadBalance.selectServiceAddress(serviceUrlList, rpcRequest);
         log.info("成功找到服务地址:[{}]", targetServiceUrl);
-        // 解析服务地址为host和port
-        String[] socketAddressArray = targetServiceUrl.split(":");
+        // 返回服务的socket地址
+        InetSocketAddress serviceAddress = serviceAddresses.get(targetServiceUrl);
+        if (serviceAddress == null) {
+            serviceAddress = serviceAddresses.computeIfAbsent(targetServiceUrl, ZkServiceDiscoveryImpl::parseAddress);
+        }
+        return serviceAddress;
+    }
+
+    /**
+     * 解析服务地址为host和port
+     */
+    private static InetSocketAddress parseAddress(String serviceUrl) {
+        String[] socketAddressArray = serviceUrl.split(":");
         String host = socketAddressArray[0];
         int port = Integer.parseInt(socketAddressArray[1]);
-        // 返回服务的socket地址
         return new InetSocketAddress(host, port);
     }
 }
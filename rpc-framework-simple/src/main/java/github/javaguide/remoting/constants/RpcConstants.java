@@ -14,9 +14,21 @@ public class RpcConstants {
      * Magic number. Verify RpcMessage
      */
     public static final byte[] MAGIC_NUMBER = {(byte) 'g', (byte) 'r', (byte) 'p', (byte) 'c'};
+    /**
+     * The same magic number read as one big-endian int, so it can be checked without copying the bytes
+     */
+    public static final int MAGIC_NUMBER_INT = ('g' << 24) | ('r' << 16) | ('p' << 8) | 'c';
     public static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
     //version information
     public static final byte VERSION = 1;
+    /**
+     * protocol version 1, 4 bytes request id and nothing else in the header
+     */
+    public static final byte VERSION_1 = VERSION;
+    /**
+     * protocol version 2, adds a flags byte, 8 bytes request id and optional attachments, see {@link #HEAD_LENGTH_V2}
+     */
+    public static final byte VERSION_2 = 2;
     public static final byte TOTAL_LENGTH = 16;
     public static final byte REQUEST_TYPE = 1;
     public static final byte RESPONSE_TYPE = 2;
@@ -25,6 +37,33 @@ public class RpcConstants {
     //pong
     public static final byte HEARTBEAT_RESPONSE_TYPE = 4;
     public static final int HEAD_LENGTH = 16;
+    /**
+     * header length of a version 2 frame without attachments
+     */
+    public static final int HEAD_LENGTH_V2 = 21;
+    /**
+     * version 2 flag: an attachment block follows the fixed header
+     */
+    public static final byte FLAG_ATTACHMENTS = 0x01;
+    /**
+     * version 2 flag, reserved for requests that don't expect a response. No client sends it yet, servers still
+     * answer such requests
+     */
+    public static final byte FLAG_ONEWAY = 0x02;
+    /**
+     * version 2 flag: on a request, the server should remember its method under the method id of the header and
+     * acknowledge that with the same flag on the response. See {@link #FLAG_METHOD_ID}
+     */
+    public static final byte FLAG_METHOD_BIND = 0x04;
+    /**
+     * version 2 flag: the body only carries the parameters, the method is the one bound to the method id of the header.
+     * A 4B method id follows the request id when this flag or {@link #FLAG_METHOD_BIND} is set
+     */
+    public static final byte FLAG_METHOD_ID = 0x08;
+    /**
+     * the most methods bound on one connection, later methods are always sent in full
+     */
+    public static final int MAX_METHOD_IDS = 1024;
     public static final String PING = "ping";
     public static final String PONG = "pong";
     public static final int MAX_FRAME_LENGTH = 8 * 1024 * 1024;
@@ -0,0 +1,20 @@
+package github.javaguide.remoting.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.io.Serializable;
+
+/**
+ * Body of a request sent by method id, the server knows the rest of the {@link RpcRequest} from the binding
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@ToString
+public class RpcInvocation implements Serializable {
+    private static final long serialVersionUID = -3188416318424393616L;
+    private Object[] parameters;
+}
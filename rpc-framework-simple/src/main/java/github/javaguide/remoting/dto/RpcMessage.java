@@ -8,6 +8,8 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
 
+import java.util.Map;
+
 /**
  * @author wangtao
  * @createTime 2020年10月2日 12:33
@@ -20,6 +22,10 @@ import lombok.ToString;
 @ToString
 public class RpcMessage {
 
+    /**
+     * protocol version, 0 means {@link github.javaguide.remoting.constants.RpcConstants#VERSION_1}
+     */
+    private byte version;
     /**
      * rpc message type
      */
@@ -33,12 +39,29 @@ public class RpcMessage {
      */
     private byte compress;
     /**
-     * request id
+     * flags of a version 2 frame, see {@code RpcConstants.FLAG_*}
      */
-    private int requestId;
+    private byte flags;
+    /**
+     * request id, version 1 frames only carry the low 32 bits
+     */
+    private long requestId;
+    /**
+     * id of the invoked method on this connection, only written if flags contain FLAG_METHOD_BIND or FLAG_METHOD_ID
+     */
+    private int methodId;
+    /**
+     * small key/value metadata carried in the header of a version 2 frame, e.g. deadlines or trace ids
+     */
+    private Map<String, String> attachments;
     /**
      * request data
      */
     private Object data;
+    /**
+     * interface name of the service the message belongs to, it isn't written to the frame and is only used locally,
+     * e.g. to pick the compression dictionary
+     */
+    private String serviceName;
 
 }
@@ -4,6 +4,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 import lombok.ToString;
 
 import java.io.Serializable;
@@ -19,6 +20,10 @@ import java.io.Serializable;
 @ToString
 public class RpcRequest implements Serializable {
     private static final long serialVersionUID = 1905122041950251207L;
+    /**
+     * only set for version 1 frames, newer peers correlate calls by the request id of the frame header
+     */
+    @Setter
     private String requestId;
     private String interfaceName;
     private String methodName;
@@ -26,8 +31,45 @@ public class RpcRequest implements Serializable {
     private Class<?>[] paramTypes;
     private String version;
     private String group;
+    /**
+     * local caches of {@link #getRpcServiceName()} and {@link #getMethodKey()}, they aren't serialized.
+     * The client proxy passes in the keys it computed once per method.
+     */
+    @ToString.Exclude
+    private transient String rpcServiceName;
+    @ToString.Exclude
+    private transient String methodKey;
+    /**
+     * flush the request right away instead of coalescing it with other writes, see {@code RpcLowLatency}. Not serialized
+     */
+    @ToString.Exclude
+    private transient boolean lowLatency;
 
     public String getRpcServiceName() {
-        return this.getInterfaceName() + this.getGroup() + this.getVersion();
+        if (rpcServiceName == null) {
+            rpcServiceName = this.getInterfaceName() + this.getGroup() + this.getVersion();
+        }
+        return rpcServiceName;
+    }
+
+    /**
+     * @return the service and the signature of the called method, e.g. to give the method an id
+     */
+    public String getMethodKey() {
+        if (methodKey == null) {
+            methodKey = methodKey(getRpcServiceName(), methodName, paramTypes);
+        }
+        return methodKey;
+    }
+
+    public static String methodKey(String rpcServiceName, String methodName, Class<?>[] paramTypes) {
+        StringBuilder methodKey = new StringBuilder(rpcServiceName)
+                .append('#').append(methodName).append('(');
+        if (paramTypes != null) {
+            for (Class<?> paramType : paramTypes) {
+                methodKey.append(paramType.getName()).append(',');
+            }
+        }
+        return methodKey.append(')').toString();
     }
 }
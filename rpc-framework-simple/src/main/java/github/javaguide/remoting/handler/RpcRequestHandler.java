@@ -6,9 +6,17 @@ import github.javaguide.provider.ServiceProvider;
 import github.javaguide.provider.impl.ZkServiceProviderImpl;
 import github.javaguide.remoting.dto.RpcRequest;
 import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * RpcRequest processor
@@ -19,6 +27,10 @@ import java.lang.reflect.Method;
 @Slf4j
 public class RpcRequestHandler {
     private final ServiceProvider serviceProvider;
+    /**
+     * methods found by reflection because they aren't prepared by the service provider, so each is looked up once
+     */
+    private final Map<String, ServiceMethod> reflectedMethods = new ConcurrentHashMap<>();
 
     public RpcRequestHandler() {
         serviceProvider = SingletonFactory.getInstance(ZkServiceProviderImpl.class);
@@ -28,26 +40,109 @@ public class RpcRequestHandler {
      * Processing rpcRequest: call the corresponding method, and then return the method
      */
     public Object handle(RpcRequest rpcRequest) {
+        return invoke(resolve(rpcRequest), rpcRequest.getParameters());
+    }
+
+    /**
+     * Find the service and the method a request calls
+     */
+    public ServiceMethod resolve(RpcRequest rpcRequest) {
+        // the methods of the published interfaces are prepared when the service is added
+        ServiceMethod serviceMethod = serviceProvider.getServiceMethod(rpcRequest.getMethodKey());
+        if (serviceMethod != null) {
+            return serviceMethod;
+        }
+        serviceMethod = reflectedMethods.get(rpcRequest.getMethodKey());
+        if (serviceMethod != null) {
+            return serviceMethod;
+        }
+        // unknown methods throw and leave nothing behind
+        return reflectedMethods.computeIfAbsent(rpcRequest.getMethodKey(), methodKey -> reflect(rpcRequest));
+    }
+
+    private ServiceMethod reflect(RpcRequest rpcRequest) {
         Object service = serviceProvider.getService(rpcRequest.getRpcServiceName());
-        return invokeTargetMethod(rpcRequest, service);
+        try {
+            Method method = service.getClass().getMethod(rpcRequest.getMethodName(), rpcRequest.getParamTypes());
+            return new ServiceMethod(rpcRequest.getInterfaceName(), service, method);
+        } catch (NoSuchMethodException e) {
+            throw new RpcException(e.getMessage(), e);
+        }
     }
 
     /**
      * get method execution results
      *
-     * @param rpcRequest client request
-     * @param service    service object
+     * @param serviceMethod the service method to call
+     * @param parameters    parameters sent by the client
      * @return the result of the target method execution
      */
-    private Object invokeTargetMethod(RpcRequest rpcRequest, Object service) {
+    public Object invoke(ServiceMethod serviceMethod, Object[] parameters) {
+        try {
+            return invokeAsync(serviceMethod, parameters).join();
+        } catch (CompletionException | CancellationException e) {
+            throw e.getCause() instanceof RpcException ? (RpcException) e.getCause() : new RpcException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Call the method without waiting for the result of methods returning {@link CompletionStage} or
+     * {@link Publisher}, so the calling thread is free while they wait for their own downstream calls
+     *
+     * @return the result, completed exceptionally if the method throws or its stage fails
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<Object> invokeAsync(ServiceMethod serviceMethod, Object[] parameters) {
         Object result;
         try {
-            Method method = service.getClass().getMethod(rpcRequest.getMethodName(), rpcRequest.getParamTypes());
-            result = method.invoke(service, rpcRequest.getParameters());
-            log.info("service:[{}] successful invoke method:[{}]", rpcRequest.getInterfaceName(), rpcRequest.getMethodName());
-        } catch (NoSuchMethodException | IllegalArgumentException | InvocationTargetException | IllegalAccessException e) {
-            throw new RpcException(e.getMessage(), e);
+            result = serviceMethod.invoke(parameters);
+            log.debug("service:[{}] successful invoke method:[{}]", serviceMethod.getInterfaceName(), serviceMethod.getMethod().getName());
+        } catch (Throwable e) {
+            CompletableFuture<Object> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new RpcException(e.getMessage(), e));
+            return failed;
+        }
+        if (result instanceof Publisher) {
+            // a call publishes one element, see RpcPublisher
+            return firstElement((Publisher<?>) result);
+        }
+        if (result instanceof CompletionStage) {
+            // the interface returns a future for its clients, they get the value it completes with
+            return ((CompletionStage<Object>) result).toCompletableFuture();
         }
-        return result;
+        return CompletableFuture.completedFuture(result);
+    }
+
+    /**
+     * @return a future of the first element of {@code publisher}, or null if it completes without element
+     */
+    private static CompletableFuture<Object> firstElement(Publisher<?> publisher) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        publisher.subscribe(new Subscriber<Object>() {
+            private Subscription subscription;
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(Object element) {
+                subscription.cancel();
+                future.complete(element);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                future.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                future.complete(null);
+            }
+        });
+        return future;
     }
 }
@@ -0,0 +1,89 @@
+package github.javaguide.remoting.handler;
+
+import github.javaguide.annotation.RpcLowLatency;
+import github.javaguide.annotation.RpcNonBlocking;
+import github.javaguide.exception.RpcException;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+
+/**
+ * A service method resolved from a request, so calls bound to a method id skip the lookup.
+ * <p>
+ * The method is called through a {@link MethodHandle} bound to the service, adapted once to take the parameters as
+ * an {@code Object[]} and to return {@code Object}. Unlike {@link Method#invoke} there is no access check and no
+ * wrapping of the arguments per call.
+ * </p>
+ */
+@Getter
+@ToString
+public class ServiceMethod {
+    private final String interfaceName;
+    private final Object service;
+    private final Method method;
+    /**
+     * executor profile the method runs on, empty or null for the default profile
+     */
+    private final String executor;
+    /**
+     * the method or its service class is annotated with {@link RpcNonBlocking}, it is called on the I/O thread
+     */
+    private final boolean nonBlocking;
+    /**
+     * the interface method is annotated with {@link RpcLowLatency}, its responses are flushed right away
+     */
+    private final boolean lowLatency;
+    @ToString.Exclude
+    private final MethodHandle invoker;
+
+    public ServiceMethod(String interfaceName, Object service, Method method) {
+        this(interfaceName, service, method, null);
+    }
+
+    public ServiceMethod(String interfaceName, Object service, Method method, String executor) {
+        this.interfaceName = interfaceName;
+        this.service = service;
+        this.method = method;
+        this.executor = executor;
+        this.nonBlocking = nonBlocking(service, method);
+        this.lowLatency = method.isAnnotationPresent(RpcLowLatency.class);
+        this.invoker = invoker(service, method);
+    }
+
+    /**
+     * Call the method, exceptions thrown by it are passed on unwrapped
+     *
+     * @param parameters the parameters, null for a method without parameters
+     */
+    public Object invoke(Object[] parameters) throws Throwable {
+        return invoker.invokeExact(parameters);
+    }
+
+    private static boolean nonBlocking(Object service, Method method) {
+        if (service.getClass().isAnnotationPresent(RpcNonBlocking.class) || method.isAnnotationPresent(RpcNonBlocking.class)) {
+            return true;
+        }
+        try {
+            // the method of the interface, the annotation is on the implementation
+            return service.getClass().getMethod(method.getName(), method.getParameterTypes()).isAnnotationPresent(RpcNonBlocking.class);
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static MethodHandle invoker(Object service, Method method) {
+        // the implementation class or the interface may not be public
+        method.setAccessible(true);
+        try {
+            MethodHandle methodHandle = MethodHandles.lookup().unreflect(method).bindTo(service);
+            // box primitives and turn void into null, then take the parameters as an array
+            return methodHandle.asType(methodHandle.type().generic())
+                    .asSpreader(Object[].class, method.getParameterCount());
+        } catch (IllegalAccessException e) {
+            throw new RpcException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package github.javaguide.remoting.transport.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * Coalesce the flushes of a channel, so one syscall writes many messages.
+ * <p>
+ * A flush while the channel is reading is put off until the read completes, a flush from elsewhere until the tasks
+ * the event loop runs right now are done. Writes made in between are flushed together. The pending writes are flushed
+ * right away once there are {@code maxMessages} flushes or {@code maxBytes} bytes waiting, and calls that must not
+ * wait use {@link #flushNow(Channel)}.
+ * </p>
+ * Must sit between the head of the pipeline and the encoder, so it sees the encoded bytes.
+ */
+public class FlushCoalescingHandler extends ChannelDuplexHandler {
+
+    private final int maxMessages;
+    private final long maxBytes;
+    private final Runnable flushTask = this::flushPending;
+    private ChannelHandlerContext ctx;
+    private int pendingMessages;
+    private long pendingBytes;
+    private boolean readInProgress;
+    private boolean flushScheduled;
+
+    /**
+     * @param maxMessages flush once this many flushes are waiting
+     * @param maxBytes    flush once this many bytes are waiting
+     */
+    public FlushCoalescingHandler(int maxMessages, long maxBytes) {
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Flush the writes of the channel right away, for calls that must not wait for other writes. Must be called on the
+     * event loop of the channel
+     */
+    public static void flushNow(Channel channel) {
+        ChannelHandlerContext ctx = channel.pipeline().context(FlushCoalescingHandler.class);
+        if (ctx == null) {
+            channel.flush();
+        } else {
+            ((FlushCoalescingHandler) ctx.handler()).flushPending();
+        }
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        if (msg instanceof ByteBuf) {
+            pendingBytes += ((ByteBuf) msg).readableBytes();
+        }
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) {
+        if (++pendingMessages >= maxMessages || pendingBytes >= maxBytes) {
+            flushPending();
+        } else if (!readInProgress && !flushScheduled) {
+            // writes queued on the event loop behind this one are flushed together
+            flushScheduled = true;
+            ctx.channel().eventLoop().execute(flushTask);
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        readInProgress = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        // responses written while reading a batch of requests go out together
+        readInProgress = false;
+        flushPending();
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        if (!ctx.channel().isWritable()) {
+            // the outbound buffer is full, get the bytes moving instead of waiting for more
+            flushPending();
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        flushPending();
+        ctx.fireExceptionCaught(cause);
+    }
+
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) {
+        flushPending();
+        ctx.disconnect(promise);
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) {
+        flushPending();
+        ctx.close(promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        flushPending();
+    }
+
+    private void flushPending() {
+        flushScheduled = false;
+        if (pendingMessages > 0 || pendingBytes > 0) {
+            pendingMessages = 0;
+            pendingBytes = 0;
+            ctx.flush();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package github.javaguide.remoting.transport.netty;
+
+import github.javaguide.enums.RpcConfigEnum;
+import github.javaguide.utils.RpcConfigUtil;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The netty transport of client and server, chosen by {@link RpcConfigEnum#TRANSPORT}.
+ * <p>
+ * The native epoll transport saves syscalls and garbage per message compared to NIO, and supports SO_REUSEPORT and
+ * TCP_QUICKACK. It is used on linux when its native library loads, NIO everywhere else.
+ * </p>
+ */
+@Slf4j
+public final class NettyTransport {
+
+    private static final boolean EPOLL = useEpoll(RpcConfigUtil.getString(RpcConfigEnum.TRANSPORT, "auto"));
+    private static final int SEND_BUFFER = RpcConfigUtil.getInt(RpcConfigEnum.TRANSPORT_SEND_BUFFER, 0);
+    private static final int RECEIVE_BUFFER = RpcConfigUtil.getInt(RpcConfigEnum.TRANSPORT_RECEIVE_BUFFER, 0);
+    private static final WriteBufferWaterMark WRITE_BUFFER_WATER_MARK = new WriteBufferWaterMark(
+            positiveOr(RpcConfigUtil.getInt(RpcConfigEnum.TRANSPORT_WRITE_BUFFER_LOW, 0), WriteBufferWaterMark.DEFAULT.low()),
+            positiveOr(RpcConfigUtil.getInt(RpcConfigEnum.TRANSPORT_WRITE_BUFFER_HIGH, 0), WriteBufferWaterMark.DEFAULT.high()));
+    private static final boolean TCP_QUICKACK = RpcConfigUtil.getBoolean(RpcConfigEnum.TRANSPORT_TCP_QUICKACK, false);
+    private static final int FLUSH_MAX_MESSAGES = RpcConfigUtil.getInt(RpcConfigEnum.TRANSPORT_FLUSH_MAX_MESSAGES, 64);
+    private static final int FLUSH_MAX_BYTES = RpcConfigUtil.getInt(RpcConfigEnum.TRANSPORT_FLUSH_MAX_BYTES, 64 * 1024);
+
+    private NettyTransport() {
+    }
+
+    public static boolean isEpoll() {
+        return EPOLL;
+    }
+
+    /**
+     * @param threads number of event loops, 0 for netty's default of twice the number of processors
+     */
+    public static EventLoopGroup newEventLoopGroup(int threads) {
+        return EPOLL ? new EpollEventLoopGroup(threads) : new NioEventLoopGroup(threads);
+    }
+
+    public static Class<? extends SocketChannel> socketChannelClass() {
+        return EPOLL ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    public static Class<? extends ServerChannel> serverSocketChannelClass() {
+        return EPOLL ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    /**
+     * Apply the configured socket options to the connections of a client
+     */
+    public static Bootstrap configure(Bootstrap bootstrap) {
+        if (SEND_BUFFER > 0) {
+            bootstrap.option(ChannelOption.SO_SNDBUF, SEND_BUFFER);
+        }
+        if (RECEIVE_BUFFER > 0) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, RECEIVE_BUFFER);
+        }
+        bootstrap.option(ChannelOption.WRITE_BUFFER_WATER_MARK, WRITE_BUFFER_WATER_MARK);
+        if (EPOLL && TCP_QUICKACK) {
+            bootstrap.option(EpollChannelOption.TCP_QUICKACK, true);
+        }
+        return bootstrap;
+    }
+
+    /**
+     * Apply the configured socket options to the connections accepted by a server
+     *
+     * @param acceptors number of server sockets that will be bound to the port, more than one needs SO_REUSEPORT
+     */
+    public static ServerBootstrap configure(ServerBootstrap serverBootstrap, int acceptors) {
+        if (SEND_BUFFER > 0) {
+            serverBootstrap.childOption(ChannelOption.SO_SNDBUF, SEND_BUFFER);
+        }
+        if (RECEIVE_BUFFER > 0) {
+            // set on the server socket too, so it applies to the TCP handshake of accepted connections
+            serverBootstrap.option(ChannelOption.SO_RCVBUF, RECEIVE_BUFFER);
+            serverBootstrap.childOption(ChannelOption.SO_RCVBUF, RECEIVE_BUFFER);
+        }
+        serverBootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, WRITE_BUFFER_WATER_MARK);
+        if (EPOLL && TCP_QUICKACK) {
+            serverBootstrap.childOption(EpollChannelOption.TCP_QUICKACK, true);
+        }
+        if (EPOLL && acceptors > 1) {
+            // the kernel spreads new connections over the server sockets bound to the port
+            serverBootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+        return serverBootstrap;
+    }
+
+    /**
+     * Add the {@link FlushCoalescingHandler}, call before the encoder is added. Not added if
+     * {@link RpcConfigEnum#TRANSPORT_FLUSH_MAX_MESSAGES} is 1 or less, then every message is flushed on its own
+     */
+    public static void addFlushCoalescing(ChannelPipeline pipeline) {
+        if (FLUSH_MAX_MESSAGES > 1) {
+            pipeline.addLast(new FlushCoalescingHandler(FLUSH_MAX_MESSAGES, FLUSH_MAX_BYTES));
+        }
+    }
+
+    private static boolean useEpoll(String transport) {
+        switch (transport) {
+            case "nio":
+                return false;
+            case "epoll":
+                if (!Epoll.isAvailable()) {
+                    throw new IllegalStateException("epoll transport is not available", Epoll.unavailabilityCause());
+                }
+                return true;
+            case "auto":
+                if (!Epoll.isAvailable()) {
+                    log.info("epoll transport is not available, use nio: {}", Epoll.unavailabilityCause().toString());
+                    return false;
+                }
+                return true;
+            default:
+                throw new IllegalArgumentException("unknown transport: " + transport);
+        }
+    }
+
+    private static int positiveOr(int value, int defaultValue) {
+        return value > 0 ? value : defaultValue;
+    }
+}
@@ -0,0 +1,216 @@
+package github.javaguide.remoting.transport.netty.client;
+
+import github.javaguide.enums.RpcErrorMessageEnum;
+import github.javaguide.exception.RpcException;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * The connections of a client to one server address.
+ * <p>
+ * Calls go to the connection with the fewest requests waiting for a response, ties are broken round-robin, so the
+ * load spreads over several sockets and event loops. The pool starts with one connection and grows by one whenever
+ * the chosen connection has {@code growPending} requests waiting, up to {@code maxSize}. A connection carries many
+ * requests at once, so a lightly loaded client stays on one. Connections that went idle are closed again by
+ * {@link #closeIdleChannels(long)}, the last one is kept.
+ * </p>
+ * <p>
+ * While there is no active connection, all callers wait for the same connection attempt, see {@link #connect(Supplier)}.
+ * </p>
+ * The array of channels is replaced on every change, selection reads it without locking.
+ */
+@Slf4j
+public class ChannelPool {
+    private static final Channel[] EMPTY = new Channel[0];
+    public static final int DEFAULT_GROW_PENDING = 16;
+
+    private final InetSocketAddress address;
+    private final int maxSize;
+    private final int growPending;
+    private volatile Channel[] channels = EMPTY;
+    /**
+     * connections being opened to grow the pool
+     */
+    private final AtomicInteger connecting = new AtomicInteger();
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    /**
+     * the connection being opened because there is no active one, null if there is none
+     */
+    private final AtomicReference<CompletableFuture<Channel>> pendingConnect = new AtomicReference<>();
+
+    public ChannelPool(InetSocketAddress address, int maxSize) {
+        this(address, maxSize, DEFAULT_GROW_PENDING);
+    }
+
+    /**
+     * @param growPending the pool grows once the chosen connection has this many requests waiting for a response
+     */
+    public ChannelPool(InetSocketAddress address, int maxSize, int growPending) {
+        this.address = address;
+        this.maxSize = Math.max(1, maxSize);
+        this.growPending = Math.max(1, growPending);
+    }
+
+    /**
+     * @return the active channel with the fewest pending requests, or null if there is none
+     */
+    public Channel select() {
+        Channel[] current = channels;
+        int size = current.length;
+        if (size == 0) {
+            return null;
+        }
+        int start = size == 1 ? 0 : (nextIndex.getAndIncrement() & Integer.MAX_VALUE) % size;
+        Channel selected = null;
+        int selectedPending = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            Channel channel = current[(start + i) % size];
+            if (!channel.isActive()) {
+                continue;
+            }
+            int pending = UnprocessedRequests.of(channel).pending();
+            if (pending < selectedPending) {
+                selected = channel;
+                selectedPending = pending;
+                if (pending == 0) {
+                    break;
+                }
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Open the first connection of the pool, or join the attempt already under way. Nothing blocks: the future
+     * completes with the connected channel, or exceptionally as soon as the connection fails.
+     *
+     * @param connector starts connecting to the address of this pool
+     */
+    public CompletableFuture<Channel> connect(Supplier<ChannelFuture> connector) {
+        while (true) {
+            CompletableFuture<Channel> pending = pendingConnect.get();
+            if (pending != null) {
+                return pending;
+            }
+            CompletableFuture<Channel> newConnect = new CompletableFuture<>();
+            if (!pendingConnect.compareAndSet(null, newConnect)) {
+                continue;
+            }
+            // another attempt may have finished between the caller's select() and here
+            Channel channel = select();
+            if (channel != null) {
+                pendingConnect.set(null);
+                newConnect.complete(channel);
+                return newConnect;
+            }
+            connector.get().addListener((ChannelFutureListener) future -> {
+                if (future.isSuccess()) {
+                    log.info("The client has connected [{}] successful!", address);
+                    // add before clearing, so callers see either the channel or the pending attempt
+                    add(future.channel());
+                    pendingConnect.set(null);
+                    newConnect.complete(future.channel());
+                } else {
+                    pendingConnect.set(null);
+                    newConnect.completeExceptionally(new RpcException(
+                            RpcErrorMessageEnum.CLIENT_CONNECT_SERVER_FAILURE.getMessage() + ":" + address, future.cause()));
+                }
+            });
+            return newConnect;
+        }
+    }
+
+    /**
+     * Reserve a new connection if {@code selected} has {@code growPending} requests waiting and the pool may still grow.
+     * The caller must {@link #add(Channel)} the connection or call {@link #cancelGrow()}.
+     */
+    public boolean tryGrow(Channel selected) {
+        if (UnprocessedRequests.of(selected).pending() < growPending) {
+            return false;
+        }
+        while (true) {
+            int current = connecting.get();
+            if (channels.length + current >= maxSize) {
+                return false;
+            }
+            if (connecting.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void cancelGrow() {
+        connecting.decrementAndGet();
+    }
+
+    /**
+     * Add a connection opened after {@link #tryGrow(Channel)}
+     */
+    public void addGrown(Channel channel) {
+        add(channel);
+        connecting.decrementAndGet();
+    }
+
+    /**
+     * Add a connection, it leaves the pool by itself once closed
+     */
+    public synchronized void add(Channel channel) {
+        // the idle time of the connection counts from now until it carries a request
+        UnprocessedRequests.of(channel);
+        Channel[] newChannels = Arrays.copyOf(channels, channels.length + 1);
+        newChannels[channels.length] = channel;
+        channels = newChannels;
+        log.info("Channel pool of [{}] has [{}] connections", address, newChannels.length);
+        channel.closeFuture().addListener(future -> remove(channel));
+    }
+
+    private synchronized void remove(Channel channel) {
+        List<Channel> newChannels = new ArrayList<>(Arrays.asList(channels));
+        if (newChannels.remove(channel)) {
+            channels = newChannels.toArray(EMPTY);
+        }
+    }
+
+    /**
+     * Close the connections without pending requests whose last request is older than {@code idleTimeoutMillis},
+     * the last active connection is kept
+     */
+    public void closeIdleChannels(long idleTimeoutMillis) {
+        long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        int active = 0;
+        for (Channel channel : channels) {
+            if (channel.isActive()) {
+                active++;
+            }
+        }
+        for (Channel channel : channels) {
+            if (active <= 1) {
+                return;
+            }
+            UnprocessedRequests unprocessedRequests = UnprocessedRequests.of(channel);
+            // read the clock after the state of the channel, so its idle time is never negative
+            if (channel.isActive() && unprocessedRequests.pending() == 0
+                    && System.nanoTime() - unprocessedRequests.lastRequestNanos() >= idleTimeoutNanos) {
+                log.info("close idle connection [{}]", channel);
+                channel.close();
+                active--;
+            }
+        }
+    }
+
+    public int size() {
+        return channels.length;
+    }
+}
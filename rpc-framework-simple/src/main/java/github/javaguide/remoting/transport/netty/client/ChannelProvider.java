@@ -1,5 +1,7 @@
 package github.javaguide.remoting.transport.netty.client;
 
+import github.javaguide.enums.RpcConfigEnum;
+import github.javaguide.utils.RpcConfigUtil;
 import io.netty.channel.Channel;
 import lombok.extern.slf4j.Slf4j;
 
@@ -9,6 +11,10 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * store and get Channel object
+ * <p>
+ * Each server address has a {@link ChannelPool}, see {@link RpcConfigEnum#CLIENT_POOL_MAX_SIZE}. The pools are keyed
+ * by the resolved address, the service discovery hands out the same address objects for the same server.
+ * </p>
  *
  * @author shuang.kou
  * @createTime 2020年05月29日 16:36:00
@@ -16,35 +22,48 @@ import java.util.concurrent.ConcurrentHashMap;
 @Slf4j
 public class ChannelProvider {
 
-    private final Map<String, Channel> channelMap;
+    private final Map<InetSocketAddress, ChannelPool> channelPools;
+    private final int maxPoolSize;
+    private final int poolGrowPending;
 
     public ChannelProvider() {
-        channelMap = new ConcurrentHashMap<>();
+        channelPools = new ConcurrentHashMap<>();
+        maxPoolSize = RpcConfigUtil.getInt(RpcConfigEnum.CLIENT_POOL_MAX_SIZE,
+                Math.min(4, Runtime.getRuntime().availableProcessors()));
+        poolGrowPending = RpcConfigUtil.getInt(RpcConfigEnum.CLIENT_POOL_GROW_PENDING, ChannelPool.DEFAULT_GROW_PENDING);
     }
 
-    public Channel get(InetSocketAddress inetSocketAddress) {
-        String key = inetSocketAddress.toString();
-        // determine if there is a connection for the corresponding address
-        if (channelMap.containsKey(key)) {
-            Channel channel = channelMap.get(key);
-            // if so, determine if the connection is available, and if so, get it directly
-            if (channel != null && channel.isActive()) {
-                return channel;
-            } else {
-                channelMap.remove(key);
-            }
+    public ChannelPool getPool(InetSocketAddress inetSocketAddress) {
+        ChannelPool channelPool = channelPools.get(inetSocketAddress);
+        if (channelPool == null) {
+            channelPool = channelPools.computeIfAbsent(inetSocketAddress, address -> new ChannelPool(address, maxPoolSize, poolGrowPending));
         }
-        return null;
+        return channelPool;
+    }
+
+    /**
+     * @return the least busy active channel to the address, or null if there is none
+     */
+    public Channel get(InetSocketAddress inetSocketAddress) {
+        ChannelPool channelPool = channelPools.get(inetSocketAddress);
+        return channelPool == null ? null : channelPool.select();
     }
 
     public void set(InetSocketAddress inetSocketAddress, Channel channel) {
-        String key = inetSocketAddress.toString();
-        channelMap.put(key, channel);
+        getPool(inetSocketAddress).add(channel);
     }
 
     public void remove(InetSocketAddress inetSocketAddress) {
-        String key = inetSocketAddress.toString();
-        channelMap.remove(key);
-        log.info("Channel map size :[{}]", channelMap.size());
+        channelPools.remove(inetSocketAddress);
+        log.info("Channel map size :[{}]", channelPools.size());
+    }
+
+    /**
+     * Close the idle connections of every pool
+     */
+    public void closeIdleChannels(long idleTimeoutMillis) {
+        for (ChannelPool channelPool : channelPools.values()) {
+            channelPool.closeIdleChannels(idleTimeoutMillis);
+        }
     }
 }
@@ -0,0 +1,74 @@
+package github.javaguide.remoting.transport.netty.client;
+
+import github.javaguide.remoting.constants.RpcConstants;
+import github.javaguide.remoting.dto.RpcMessage;
+import github.javaguide.remoting.dto.RpcRequest;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The ids of the methods called on one connection.
+ * <p>
+ * The first call of a method asks the server to bind it to a new id ({@link RpcConstants#FLAG_METHOD_BIND}) and is sent
+ * in full. Once a response acknowledges the binding, calls only carry the id and the parameters
+ * ({@link RpcConstants#FLAG_METHOD_ID}). Servers that don't know the flag never acknowledge it, so they keep
+ * getting full requests. Like {@link UnprocessedRequests}, all methods must be called on the event loop of the channel.
+ * </p>
+ */
+public class MethodIds {
+    private static final AttributeKey<MethodIds> KEY = AttributeKey.valueOf(MethodIds.class.getName());
+
+    private final Map<String, Integer> methodIds = new HashMap<>();
+    /**
+     * indexed by method id, true once the server has acknowledged the binding
+     */
+    private final boolean[] bound = new boolean[RpcConstants.MAX_METHOD_IDS + 1];
+
+    public static MethodIds of(Channel channel) {
+        MethodIds methodIds = channel.attr(KEY).get();
+        if (methodIds == null) {
+            MethodIds newMethodIds = new MethodIds();
+            methodIds = channel.attr(KEY).setIfAbsent(newMethodIds);
+            if (methodIds == null) {
+                methodIds = newMethodIds;
+            }
+        }
+        return methodIds;
+    }
+
+    /**
+     * Set the method id and the matching flag on a version 2 request message
+     */
+    public void apply(RpcMessage rpcMessage) {
+        RpcRequest rpcRequest = (RpcRequest) rpcMessage.getData();
+        String methodKey = rpcRequest.getMethodKey();
+        Integer methodId = methodIds.get(methodKey);
+        if (methodId == null) {
+            if (methodIds.size() == RpcConstants.MAX_METHOD_IDS) {
+                return;
+            }
+            // ids start at 1, so a frame without a method id is never mistaken for a binding
+            methodId = methodIds.size() + 1;
+            methodIds.put(methodKey, methodId);
+            rpcMessage.setFlags((byte) (rpcMessage.getFlags() | RpcConstants.FLAG_METHOD_BIND));
+        } else if (bound[methodId]) {
+            rpcMessage.setFlags((byte) (rpcMessage.getFlags() | RpcConstants.FLAG_METHOD_ID));
+        } else {
+            // still waiting for the acknowledgement, the binding is already on its way
+            return;
+        }
+        rpcMessage.setMethodId(methodId);
+    }
+
+    /**
+     * The server has acknowledged the binding of {@code methodId}
+     */
+    public void bound(int methodId) {
+        if (methodId > 0 && methodId <= methodIds.size()) {
+            bound[methodId] = true;
+        }
+    }
+}
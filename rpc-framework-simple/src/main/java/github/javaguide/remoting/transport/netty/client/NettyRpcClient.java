@@ -2,6 +2,7 @@ package github.javaguide.remoting.transport.netty.client;
 
 
 import github.javaguide.enums.CompressTypeEnum;
+import github.javaguide.enums.RpcConfigEnum;
 import github.javaguide.enums.SerializationTypeEnum;
 import github.javaguide.enums.ServiceDiscoveryEnum;
 import github.javaguide.extension.ExtensionLoader;
@@ -12,26 +13,29 @@ import github.javaguide.remoting.dto.RpcMessage;
 import github.javaguide.remoting.dto.RpcRequest;
 import github.javaguide.remoting.dto.RpcResponse;
 import github.javaguide.remoting.transport.RpcRequestTransport;
+import github.javaguide.remoting.transport.netty.FlushCoalescingHandler;
+import github.javaguide.remoting.transport.netty.NettyTransport;
 import github.javaguide.remoting.transport.netty.codec.RpcMessageDecoder;
 import github.javaguide.remoting.transport.netty.codec.RpcMessageEncoder;
+import github.javaguide.utils.RpcConfigUtil;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.timeout.IdleStateHandler;
-import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.InetSocketAddress;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -43,17 +47,19 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public final class NettyRpcClient implements RpcRequestTransport {
     private final ServiceDiscovery serviceDiscovery;
-    private final UnprocessedRequests unprocessedRequests;
     private final ChannelProvider channelProvider;
     private final Bootstrap bootstrap;
     private final EventLoopGroup eventLoopGroup;
+    private final byte compressType;
+    private final byte protocolVersion;
+    private final long defaultTimeoutMillis;
 
     public NettyRpcClient() {
         // initialize resources such as EventLoopGroup, Bootstrap
-        eventLoopGroup = new NioEventLoopGroup();
-        bootstrap = new Bootstrap();
+        eventLoopGroup = NettyTransport.newEventLoopGroup(0);
+        bootstrap = NettyTransport.configure(new Bootstrap());
         bootstrap.group(eventLoopGroup)
-                .channel(NioSocketChannel.class)
+                .channel(NettyTransport.socketChannelClass())
                 .handler(new LoggingHandler(LogLevel.INFO))
                 //  The timeout period of the connection.
                 //  If this time is exceeded or the connection cannot be established, the connection fails.
@@ -64,74 +70,163 @@ public final class NettyRpcClient implements RpcRequestTransport {
                         ChannelPipeline p = ch.pipeline();
                         // If no data is sent to the server within 15 seconds, a heartbeat request is sent
                         p.addLast(new IdleStateHandler(0, 5, 0, TimeUnit.SECONDS));
+                        // batch the flushes of the messages below, before the encoder so it sees their bytes
+                        NettyTransport.addFlushCoalescing(p);
                         p.addLast(new RpcMessageEncoder());
-                        p.addLast(new RpcMessageDecoder());
+                        // late responses, e.g. of timed out requests, are dropped before their body is decoded
+                        p.addLast(new RpcMessageDecoder(UnprocessedRequests::isExpected));
                         p.addLast(new NettyRpcClientHandler());
                     }
                 });
         this.serviceDiscovery = ExtensionLoader.getExtensionLoader(ServiceDiscovery.class).getExtension(ServiceDiscoveryEnum.ZK.getName());
-        this.unprocessedRequests = SingletonFactory.getInstance(UnprocessedRequests.class);
         this.channelProvider = SingletonFactory.getInstance(ChannelProvider.class);
+        this.compressType = CompressTypeEnum.getCode(RpcConfigUtil.getString(RpcConfigEnum.COMPRESS_TYPE, CompressTypeEnum.GZIP.getName()));
+        this.protocolVersion = (byte) RpcConfigUtil.getInt(RpcConfigEnum.PROTOCOL_VERSION, RpcConstants.VERSION_2);
+        this.defaultTimeoutMillis = RpcConfigUtil.getInt(RpcConfigEnum.CLIENT_TIMEOUT, 5000);
+        long idleTimeout = RpcConfigUtil.getInt(RpcConfigEnum.CLIENT_POOL_IDLE_TIMEOUT, 60000);
+        eventLoopGroup.scheduleWithFixedDelay(() -> channelProvider.closeIdleChannels(idleTimeout),
+                idleTimeout, idleTimeout / 2, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * connect server and get the channel ,so that you can send rpc message to server
+     * connect server and get the channel ,so that you can send rpc message to server.
+     * Concurrent callers share one connection attempt per address, none of them blocks.
      *
      * @param inetSocketAddress server address
-     * @return the channel
+     * @return the channel, completed exceptionally if the server can't be connected
      */
-    @SneakyThrows
-    public Channel doConnect(InetSocketAddress inetSocketAddress) {
-        CompletableFuture<Channel> completableFuture = new CompletableFuture<>();
-        bootstrap.connect(inetSocketAddress).addListener((ChannelFutureListener) future -> {
-            if (future.isSuccess()) {
-                log.info("The client has connected [{}] successful!", inetSocketAddress.toString());
-                completableFuture.complete(future.channel());
-            } else {
-                throw new IllegalStateException();
-            }
-        });
-        return completableFuture.get();
+    public CompletableFuture<Channel> doConnect(InetSocketAddress inetSocketAddress) {
+        return channelProvider.getPool(inetSocketAddress).connect(() -> bootstrap.connect(inetSocketAddress));
     }
 
     @Override
     public Object sendRpcRequest(RpcRequest rpcRequest) {
+        return sendRpcRequest(rpcRequest, 0);
+    }
+
+    /**
+     * @param timeoutMillis the returned future fails if no response arrives in time, 0 for rpc.client.timeout-ms.
+     *                      The time starts when the request is sent, a pending connection has its own timeout.
+     */
+    public CompletableFuture<RpcResponse<Object>> sendRpcRequest(RpcRequest rpcRequest, long timeoutMillis) {
+        return sendRpcRequest(rpcRequest, timeoutMillis, false);
+    }
+
+    /**
+     * Like {@link #sendRpcRequest(RpcRequest, long)}, but the request waits in {@link PendingWrites} while the
+     * channel isn't writable, so demand-driven callers are slowed down by the connection instead of buffering.
+     */
+    public CompletableFuture<RpcResponse<Object>> sendRpcRequestWhenWritable(RpcRequest rpcRequest, long timeoutMillis) {
+        return sendRpcRequest(rpcRequest, timeoutMillis, true);
+    }
+
+    private CompletableFuture<RpcResponse<Object>> sendRpcRequest(RpcRequest rpcRequest, long timeoutMillis, boolean whenWritable) {
+        long timeout = timeoutMillis > 0 ? timeoutMillis : defaultTimeoutMillis;
         // build return value
         CompletableFuture<RpcResponse<Object>> resultFuture = new CompletableFuture<>();
         // get server address
         InetSocketAddress inetSocketAddress = serviceDiscovery.lookupService(rpcRequest);
+        RpcMessage rpcMessage = RpcMessage.builder().data(rpcRequest)
+                .version(protocolVersion)
+                .codec(SerializationTypeEnum.HESSIAN.getCode())
+                .compress(compressType)
+                .messageType(RpcConstants.REQUEST_TYPE).build();
         // get  server address related channel
-        Channel channel = getChannel(inetSocketAddress);
-        if (channel.isActive()) {
-            // put unprocessed request
-            unprocessedRequests.put(rpcRequest.getRequestId(), resultFuture);
-            RpcMessage rpcMessage = RpcMessage.builder().data(rpcRequest)
-                    .codec(SerializationTypeEnum.HESSIAN.getCode())
-                    .compress(CompressTypeEnum.GZIP.getCode())
-                    .messageType(RpcConstants.REQUEST_TYPE).build();
-            channel.writeAndFlush(rpcMessage).addListener((ChannelFutureListener) future -> {
-                if (future.isSuccess()) {
-                    log.info("client send message: [{}]", rpcMessage);
+        ChannelPool channelPool = channelProvider.getPool(inetSocketAddress);
+        Channel channel = channelPool.select();
+        if (channel != null) {
+            growIfBusy(channelPool, channel, inetSocketAddress);
+            sendOnEventLoop(channel, rpcMessage, resultFuture, timeout, whenWritable);
+        } else {
+            // queue behind the connection being opened, and fail as soon as it fails
+            doConnect(inetSocketAddress).whenComplete((connected, cause) -> {
+                if (cause != null) {
+                    resultFuture.completeExceptionally(cause);
                 } else {
-                    future.channel().close();
-                    resultFuture.completeExceptionally(future.cause());
-                    log.error("Send failed:", future.cause());
+                    sendOnEventLoop(connected, rpcMessage, resultFuture, timeout, whenWritable);
                 }
             });
+        }
+        return resultFuture;
+    }
+
+    private void sendOnEventLoop(Channel channel, RpcMessage rpcMessage, CompletableFuture<RpcResponse<Object>> resultFuture,
+                                 long timeoutMillis, boolean whenWritable) {
+        // the unprocessed requests of a channel are only touched by its event loop
+        EventLoop eventLoop = channel.eventLoop();
+        if (eventLoop.inEventLoop()) {
+            send(channel, rpcMessage, resultFuture, timeoutMillis, whenWritable);
         } else {
-            throw new IllegalStateException();
+            try {
+                eventLoop.execute(() -> send(channel, rpcMessage, resultFuture, timeoutMillis, whenWritable));
+            } catch (RejectedExecutionException e) {
+                resultFuture.completeExceptionally(e);
+            }
         }
+    }
 
-        return resultFuture;
+    private void send(Channel channel, RpcMessage rpcMessage, CompletableFuture<RpcResponse<Object>> resultFuture,
+                      long timeoutMillis, boolean whenWritable) {
+        if (whenWritable) {
+            PendingWrites.of(channel).runWhenWritable(channel, () -> send(channel, rpcMessage, resultFuture, timeoutMillis, false));
+            return;
+        }
+        RpcRequest rpcRequest = (RpcRequest) rpcMessage.getData();
+        // put unprocessed request
+        UnprocessedRequests unprocessedRequests = UnprocessedRequests.of(channel);
+        long requestId = unprocessedRequests.put(resultFuture, timeoutMillis);
+        rpcMessage.setRequestId(requestId);
+        if (rpcMessage.getVersion() == RpcConstants.VERSION_1) {
+            // servers from before version 2 don't echo the header id, only the one in the body
+            rpcRequest.setRequestId(Long.toString(requestId));
+        } else {
+            MethodIds.of(channel).apply(rpcMessage);
+        }
+        // the flush of other requests waits for the writes queued behind it, see FlushCoalescingHandler
+        ChannelFuture writeFuture = rpcRequest.isLowLatency() ? channel.write(rpcMessage) : channel.writeAndFlush(rpcMessage);
+        if (rpcRequest.isLowLatency()) {
+            FlushCoalescingHandler.flushNow(channel);
+        }
+        writeFuture.addListener((ChannelFutureListener) future -> {
+            if (future.isSuccess()) {
+                log.info("client send message: [{}]", rpcMessage);
+            } else {
+                future.channel().close();
+                unprocessedRequests.remove(requestId);
+                resultFuture.completeExceptionally(future.cause());
+                log.error("Send failed:", future.cause());
+            }
+        });
     }
 
-    public Channel getChannel(InetSocketAddress inetSocketAddress) {
-        Channel channel = channelProvider.get(inetSocketAddress);
+    /**
+     * Get the least busy channel to the server, connecting first if there is no active one
+     */
+    public CompletableFuture<Channel> getChannel(InetSocketAddress inetSocketAddress) {
+        ChannelPool channelPool = channelProvider.getPool(inetSocketAddress);
+        Channel channel = channelPool.select();
         if (channel == null) {
-            channel = doConnect(inetSocketAddress);
-            channelProvider.set(inetSocketAddress, channel);
+            return doConnect(inetSocketAddress);
+        }
+        growIfBusy(channelPool, channel, inetSocketAddress);
+        return CompletableFuture.completedFuture(channel);
+    }
+
+    /**
+     * If the selected channel is busy and the pool may grow, another connection is opened in the background
+     * and the call goes out on the busy channel meanwhile.
+     */
+    private void growIfBusy(ChannelPool channelPool, Channel channel, InetSocketAddress inetSocketAddress) {
+        if (channelPool.tryGrow(channel)) {
+            bootstrap.connect(inetSocketAddress).addListener((ChannelFutureListener) future -> {
+                if (future.isSuccess()) {
+                    channelPool.addGrown(future.channel());
+                } else {
+                    channelPool.cancelGrow();
+                    log.warn("Failed to open another connection to [{}]", inetSocketAddress, future.cause());
+                }
+            });
         }
-        return channel;
     }
 
     public void close() {
@@ -1,8 +1,9 @@
 package github.javaguide.remoting.transport.netty.client;
 
 import github.javaguide.enums.CompressTypeEnum;
+import github.javaguide.enums.RpcErrorMessageEnum;
 import github.javaguide.enums.SerializationTypeEnum;
-import github.javaguide.factory.SingletonFactory;
+import github.javaguide.exception.RpcException;
 import github.javaguide.remoting.constants.RpcConstants;
 import github.javaguide.remoting.dto.RpcMessage;
 import github.javaguide.remoting.dto.RpcResponse;
@@ -16,8 +17,6 @@ import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.ReferenceCountUtil;
 import lombok.extern.slf4j.Slf4j;
 
-import java.net.InetSocketAddress;
-
 /**
  * Customize the client ChannelHandler to process the data sent by the server
  *
@@ -30,14 +29,6 @@ import java.net.InetSocketAddress;
  */
 @Slf4j
 public class NettyRpcClientHandler extends ChannelInboundHandlerAdapter {
-    private final UnprocessedRequests unprocessedRequests;
-    private final NettyRpcClient nettyRpcClient;
-
-    public NettyRpcClientHandler() {
-        this.unprocessedRequests = SingletonFactory.getInstance(UnprocessedRequests.class);
-        this.nettyRpcClient = SingletonFactory.getInstance(NettyRpcClient.class);
-    }
-
     /**
      * Read the message transmitted by the server
      */
@@ -52,7 +43,15 @@ public class NettyRpcClientHandler extends ChannelInboundHandlerAdapter {
                     log.info("heart [{}]", tmp.getData());
                 } else if (messageType == RpcConstants.RESPONSE_TYPE) {
                     RpcResponse<Object> rpcResponse = (RpcResponse<Object>) tmp.getData();
-                    unprocessedRequests.complete(rpcResponse);
+                    long requestId = tmp.getRequestId();
+                    if (tmp.getVersion() == RpcConstants.VERSION_1 && rpcResponse.getRequestId() != null) {
+                        // servers from before version 2 only echo the id in the body
+                        requestId = Long.parseLong(rpcResponse.getRequestId());
+                    }
+                    if ((tmp.getFlags() & RpcConstants.FLAG_METHOD_BIND) != 0) {
+                        MethodIds.of(ctx.channel()).bound(tmp.getMethodId());
+                    }
+                    UnprocessedRequests.of(ctx.channel()).complete(requestId, rpcResponse);
                 }
             }
         } finally {
@@ -66,7 +65,8 @@ public class NettyRpcClientHandler extends ChannelInboundHandlerAdapter {
             IdleState state = ((IdleStateEvent) evt).state();
             if (state == IdleState.WRITER_IDLE) {
                 log.info("write idle happen [{}]", ctx.channel().remoteAddress());
-                Channel channel = nettyRpcClient.getChannel((InetSocketAddress) ctx.channel().remoteAddress());
+                // ping the idle connection itself, not whichever connection of the pool is picked for calls
+                Channel channel = ctx.channel();
                 RpcMessage rpcMessage = new RpcMessage();
                 rpcMessage.setCodec(SerializationTypeEnum.PROTOSTUFF.getCode());
                 rpcMessage.setCompress(CompressTypeEnum.GZIP.getCode());
@@ -79,6 +79,27 @@ public class NettyRpcClientHandler extends ChannelInboundHandlerAdapter {
         }
     }
 
+    /**
+     * Write the demand-driven requests that waited for the channel
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        PendingWrites.of(ctx.channel()).drain(ctx.channel());
+        super.channelWritabilityChanged(ctx);
+    }
+
+    /**
+     * Fail the requests still waiting for a response on the closed channel
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // the requests that never got written fail on the closed channel as well
+        PendingWrites.of(ctx.channel()).drain(ctx.channel());
+        UnprocessedRequests.of(ctx.channel()).failAll(
+                new RpcException(RpcErrorMessageEnum.CONNECTION_CLOSED, String.valueOf(ctx.channel().remoteAddress())));
+        super.channelInactive(ctx);
+    }
+
     /**
      * Called when an exception occurs in processing a client message
      */
@@ -0,0 +1,55 @@
+package github.javaguide.remoting.transport.netty.client;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Requests of one connection that wait for the channel to become writable again.
+ * <p>
+ * Demand-driven calls, see {@link github.javaguide.proxy.RpcPublisher}, are only written while the outbound buffer of
+ * the channel is below its high water mark, so a fast subscriber can't pile up requests in memory. The
+ * {@link NettyRpcClientHandler} drains the queue when the channel becomes writable or closes. Like
+ * {@link UnprocessedRequests}, all methods must be called on the event loop of the channel.
+ * </p>
+ */
+public class PendingWrites {
+    private static final AttributeKey<PendingWrites> KEY = AttributeKey.valueOf(PendingWrites.class.getName());
+
+    private final Queue<Runnable> writes = new ArrayDeque<>();
+
+    public static PendingWrites of(Channel channel) {
+        PendingWrites pendingWrites = channel.attr(KEY).get();
+        if (pendingWrites == null) {
+            PendingWrites newPendingWrites = new PendingWrites();
+            pendingWrites = channel.attr(KEY).setIfAbsent(newPendingWrites);
+            if (pendingWrites == null) {
+                pendingWrites = newPendingWrites;
+            }
+        }
+        return pendingWrites;
+    }
+
+    /**
+     * Run {@code write} now if the channel is writable and nothing waits before it, otherwise once it is
+     */
+    public void runWhenWritable(Channel channel, Runnable write) {
+        if (writes.isEmpty() && channel.isWritable()) {
+            write.run();
+        } else {
+            writes.add(write);
+        }
+    }
+
+    /**
+     * Run the waiting writes while the channel stays writable. On a closed channel all of them run, and fail.
+     */
+    public void drain(Channel channel) {
+        Runnable write;
+        while ((channel.isWritable() || !channel.isActive()) && (write = writes.poll()) != null) {
+            write.run();
+        }
+    }
+}
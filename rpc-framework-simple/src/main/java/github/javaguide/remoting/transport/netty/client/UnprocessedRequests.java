@@ -1,30 +1,198 @@
 package github.javaguide.remoting.transport.netty.client;
 
+import github.javaguide.enums.RpcErrorMessageEnum;
+import github.javaguide.exception.RpcException;
 import github.javaguide.remoting.dto.RpcResponse;
+import github.javaguide.utils.concurrent.threadpool.ThreadPoolFactoryUtil;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.collection.LongObjectHashMap;
+import io.netty.util.collection.LongObjectMap;
+import io.netty.util.concurrent.EventExecutor;
+import lombok.extern.slf4j.Slf4j;
 
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * unprocessed requests by the server.
+ * <p>
+ * There is one instance per channel, requests are keyed by the request id of the frame header, which is assigned here.
+ * All methods must be called on the event loop of the channel, so neither the map nor the id counter need locking.
+ * </p>
+ * <p>
+ * Requests with a timeout are expired by one timer wheel shared by all channels. The wheel only hands the expiry
+ * over to the event loop of the channel, which fails the future and forgets the request, so a late response is dropped.
+ * </p>
  *
  * @author shuang.kou
  * @createTime 2020年06月04日 17:30:00
  */
+@Slf4j
 public class UnprocessedRequests {
-    private static final Map<String, CompletableFuture<RpcResponse<Object>>> UNPROCESSED_RESPONSE_FUTURES = new ConcurrentHashMap<>();
+    private static final AttributeKey<UnprocessedRequests> KEY = AttributeKey.valueOf(UnprocessedRequests.class.getName());
+    /**
+     * a tick of 10 ms is precise enough for timeouts of seconds and keeps the wheel cheap
+     */
+    private static final Timer TIMER = new HashedWheelTimer(
+            ThreadPoolFactoryUtil.createThreadFactory("rpc-client-timeout", true), 10, TimeUnit.MILLISECONDS);
 
-    public void put(String requestId, CompletableFuture<RpcResponse<Object>> future) {
-        UNPROCESSED_RESPONSE_FUTURES.put(requestId, future);
+    private final EventExecutor executor;
+    private final LongObjectMap<PendingRequest> unprocessedResponseFutures = new LongObjectHashMap<>();
+    /**
+     * 0 is left out, the encoder treats it as "no id"
+     */
+    private long nextRequestId = 1;
+    /**
+     * the size of the map and the time of the last request, written by the event loop and read by {@link ChannelPool}
+     */
+    private volatile int pending;
+    private volatile long lastRequestNanos = System.nanoTime();
+
+    private UnprocessedRequests(EventExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Get the unprocessed requests of {@code channel}, creating them on first use
+     */
+    public static UnprocessedRequests of(Channel channel) {
+        UnprocessedRequests unprocessedRequests = channel.attr(KEY).get();
+        if (unprocessedRequests == null) {
+            UnprocessedRequests newRequests = new UnprocessedRequests(channel.eventLoop());
+            unprocessedRequests = channel.attr(KEY).setIfAbsent(newRequests);
+            if (unprocessedRequests == null) {
+                unprocessedRequests = newRequests;
+            }
+        }
+        return unprocessedRequests;
+    }
+
+    /**
+     * @return false if a response with this id can be dropped without decoding its body,
+     * because the request has failed or timed out in the meantime
+     */
+    public static boolean isExpected(Channel channel, long requestId) {
+        UnprocessedRequests unprocessedRequests = channel.attr(KEY).get();
+        return unprocessedRequests != null && unprocessedRequests.unprocessedResponseFutures.containsKey(requestId);
+    }
+
+    /**
+     * @return the request id to send the request with
+     */
+    public long put(CompletableFuture<RpcResponse<Object>> future) {
+        return put(future, 0);
     }
 
-    public void complete(RpcResponse<Object> rpcResponse) {
-        CompletableFuture<RpcResponse<Object>> future = UNPROCESSED_RESPONSE_FUTURES.remove(rpcResponse.getRequestId());
+    /**
+     * @param timeoutMillis the future fails with {@link RpcErrorMessageEnum#REQUEST_TIMEOUT} if no response arrives
+     *                      in time, 0 to wait until the channel closes
+     * @return the request id to send the request with
+     */
+    public long put(CompletableFuture<RpcResponse<Object>> future, long timeoutMillis) {
+        long requestId = nextRequestId++;
+        PendingRequest pendingRequest = new PendingRequest(requestId, future, timeoutMillis);
+        unprocessedResponseFutures.put(requestId, pendingRequest);
+        if (timeoutMillis > 0) {
+            pendingRequest.timeout = TIMER.newTimeout(pendingRequest, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        pending = unprocessedResponseFutures.size();
+        lastRequestNanos = System.nanoTime();
+        return requestId;
+    }
+
+    public CompletableFuture<RpcResponse<Object>> remove(long requestId) {
+        PendingRequest pendingRequest = unprocessedResponseFutures.remove(requestId);
+        pending = unprocessedResponseFutures.size();
+        if (pendingRequest == null) {
+            return null;
+        }
+        pendingRequest.cancelTimeout();
+        return pendingRequest.future;
+    }
+
+    public void complete(long requestId, RpcResponse<Object> rpcResponse) {
+        CompletableFuture<RpcResponse<Object>> future = remove(requestId);
         if (null != future) {
             future.complete(rpcResponse);
         } else {
-            throw new IllegalStateException();
+            // the request has failed or timed out in the meantime
+            log.debug("drop the response of unknown request [{}]", requestId);
+        }
+    }
+
+    /**
+     * @return the number of requests waiting for a response, may be slightly stale off the event loop
+     */
+    public int pending() {
+        return pending;
+    }
+
+    public long lastRequestNanos() {
+        return lastRequestNanos;
+    }
+
+    /**
+     * Fail every request still waiting, e.g. because the channel is closed
+     */
+    public void failAll(Throwable cause) {
+        // callbacks of the futures may send new requests on this channel, so empty the map first
+        List<PendingRequest> pendingRequests = new ArrayList<>(unprocessedResponseFutures.values());
+        unprocessedResponseFutures.clear();
+        pending = 0;
+        for (PendingRequest pendingRequest : pendingRequests) {
+            pendingRequest.cancelTimeout();
+            pendingRequest.future.completeExceptionally(cause);
+        }
+    }
+
+    private void expire(PendingRequest pendingRequest) {
+        // the response may have won the race to the event loop
+        if (unprocessedResponseFutures.remove(pendingRequest.requestId) == null) {
+            return;
+        }
+        pending = unprocessedResponseFutures.size();
+        pendingRequest.future.completeExceptionally(new RpcException(RpcErrorMessageEnum.REQUEST_TIMEOUT,
+                "request " + pendingRequest.requestId + " after " + pendingRequest.timeoutMillis + "ms"));
+    }
+
+    private final class PendingRequest implements TimerTask {
+        private final long requestId;
+        private final CompletableFuture<RpcResponse<Object>> future;
+        private final long timeoutMillis;
+        private Timeout timeout;
+
+        PendingRequest(long requestId, CompletableFuture<RpcResponse<Object>> future, long timeoutMillis) {
+            this.requestId = requestId;
+            this.future = future;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        /**
+         * Runs on the timer thread, the map belongs to the event loop
+         */
+        @Override
+        public void run(Timeout timeout) {
+            try {
+                executor.execute(() -> expire(this));
+            } catch (RejectedExecutionException e) {
+                // the event loop is gone, so is the channel and nobody touches the map anymore
+                future.completeExceptionally(new RpcException(RpcErrorMessageEnum.REQUEST_TIMEOUT,
+                        "request " + requestId + " after " + timeoutMillis + "ms"));
+            }
+        }
+
+        void cancelTimeout() {
+            if (timeout != null) {
+                timeout.cancel();
+            }
         }
     }
 }
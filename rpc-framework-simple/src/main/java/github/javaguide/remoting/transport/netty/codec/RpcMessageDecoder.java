@@ -5,16 +5,24 @@ import github.javaguide.enums.CompressTypeEnum;
 import github.javaguide.enums.SerializationTypeEnum;
 import github.javaguide.extension.ExtensionLoader;
 import github.javaguide.remoting.constants.RpcConstants;
+import github.javaguide.remoting.dto.RpcInvocation;
 import github.javaguide.remoting.dto.RpcMessage;
 import github.javaguide.remoting.dto.RpcRequest;
 import github.javaguide.remoting.dto.RpcResponse;
 import github.javaguide.serialize.Serializer;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.DecoderException;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * custom protocol decoder
@@ -32,6 +40,24 @@ import java.util.Arrays;
  * 1B compress（压缩类型） 1B codec（序列化类型）    4B  requestId（请求的Id）
  * body（object类型数据）
  * </pre>
+ * The frame above is protocol version 1. Version 2 keeps the first 12 bytes, so the frame length is found the same way:
+ * <pre>
+ *   0     1     2     3     4        5     6     7     8         9          10      11      12      13 ... 20
+ *   +-----+-----+-----+-----+--------+----+----+----+------+-----------+-------+--------+-------+-----------+
+ *   |   magic   code        |version | full length         | messageType| codec|compress| flags | RequestId |
+ *   +-----------------------+--------+---------------------+-----------+-------+--------+-------+-----------+
+ *   |         4B methodId, only present if flags contains FLAG_METHOD_BIND or FLAG_METHOD_ID                  |
+ *   +-------------------------------------------------------------------------------------------------------+
+ *   |                  attachments, only present if flags contains FLAG_ATTACHMENTS                           |
+ *   +-------------------------------------------------------------------------------------------------------+
+ *   |                                         body                                                          |
+ *   +-------------------------------------------------------------------------------------------------------+
+ * 1B flags（标志位，见 RpcConstants.FLAG_*）   8B requestId（请求的Id）
+ * methodId: the client binds a method to an id on the first call of a connection (FLAG_METHOD_BIND), later calls
+ * only carry the id and the parameters (FLAG_METHOD_ID)
+ * attachments: 2B block length, then for each entry 1B key length, key, 2B value length, value (UTF-8)
+ * </pre>
+ * The version byte decides how the rest of the header is read, so version 1 and version 2 peers can share a server.
  * <p>
  * {@link LengthFieldBasedFrameDecoder} is a length-based decoder , used to solve TCP unpacking and sticking problems.
  * </p>
@@ -42,12 +68,40 @@ import java.util.Arrays;
  */
 @Slf4j
 public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
+
+    private static final ResponseFilter ALL_RESPONSES = (channel, requestId) -> true;
+
+    private final boolean deferBody;
+    private final ResponseFilter responseFilter;
+
     public RpcMessageDecoder() {
+        this(false);
+    }
+
+    /**
+     * @param responseFilter version 2 responses it doesn't expect are dropped without decoding their body
+     */
+    public RpcMessageDecoder(ResponseFilter responseFilter) {
+        this(false, responseFilter);
+    }
+
+    /**
+     * @param deferBody if true, the decoder only parses the header of request frames and passes the body downstream
+     *                  as a retained slice, which must then be decoded by {@link #decodeDeferredBody(RpcMessage)}.
+     *                  This keeps decompression and deserialization off the I/O thread.
+     */
+    public RpcMessageDecoder(boolean deferBody) {
+        this(deferBody, ALL_RESPONSES);
+    }
+
+    private RpcMessageDecoder(boolean deferBody, ResponseFilter responseFilter) {
         // lengthFieldOffset: magic code is 4B, and version is 1B, and then full length. so value is 5
         // lengthFieldLength: full length is 4B. so value is 4
         // lengthAdjustment: full length include all data and read 9 bytes before, so the left length is (fullLength-9). so values is -9
         // initialBytesToStrip: we will check magic code and version manually, so do not strip any bytes. so values is 0
-        this(RpcConstants.MAX_FRAME_LENGTH, 5, 4, -9, 0);
+        super(RpcConstants.MAX_FRAME_LENGTH, 5, 4, -9, 0);
+        this.deferBody = deferBody;
+        this.responseFilter = responseFilter;
     }
 
     /**
@@ -63,6 +117,8 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
     public RpcMessageDecoder(int maxFrameLength, int lengthFieldOffset, int lengthFieldLength,
                              int lengthAdjustment, int initialBytesToStrip) {
         super(maxFrameLength, lengthFieldOffset, lengthFieldLength, lengthAdjustment, initialBytesToStrip);
+        this.deferBody = false;
+        this.responseFilter = ALL_RESPONSES;
     }
 
     @Override
@@ -72,7 +128,7 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
             ByteBuf frame = (ByteBuf) decoded;
             if (frame.readableBytes() >= RpcConstants.TOTAL_LENGTH) {
                 try {
-                    return decodeFrame(frame);
+                    return decodeFrame(ctx, frame);
                 } catch (Exception e) {
                     log.error("Decode frame error!", e);
                     throw e;
@@ -86,20 +142,35 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
     }
 
 
-    private Object decodeFrame(ByteBuf in) {
+    private Object decodeFrame(ChannelHandlerContext ctx, ByteBuf in) throws IOException {
         // note: must read ByteBuf in order
         checkMagicNumber(in);
-        checkVersion(in);
-        int fullLength = in.readInt();
+        byte version = in.readByte();
+        in.skipBytes(4);
         // build RpcMessage object
         byte messageType = in.readByte();
         byte codecType = in.readByte();
         byte compressType = in.readByte();
-        int requestId = in.readInt();
         RpcMessage rpcMessage = RpcMessage.builder()
+                .version(version)
                 .codec(codecType)
-                .requestId(requestId)
+                .compress(compressType)
                 .messageType(messageType).build();
+        if (version == RpcConstants.VERSION_1) {
+            rpcMessage.setRequestId(in.readInt());
+        } else if (version == RpcConstants.VERSION_2) {
+            byte flags = in.readByte();
+            rpcMessage.setFlags(flags);
+            rpcMessage.setRequestId(in.readLong());
+            if ((flags & (RpcConstants.FLAG_METHOD_BIND | RpcConstants.FLAG_METHOD_ID)) != 0) {
+                rpcMessage.setMethodId(in.readInt());
+            }
+            if ((flags & RpcConstants.FLAG_ATTACHMENTS) != 0) {
+                rpcMessage.setAttachments(readAttachments(in));
+            }
+        } else {
+            throw new IllegalArgumentException("version isn't compatible" + version);
+        }
         if (messageType == RpcConstants.HEARTBEAT_REQUEST_TYPE) {
             rpcMessage.setData(RpcConstants.PING);
             return rpcMessage;
@@ -108,50 +179,130 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
             rpcMessage.setData(RpcConstants.PONG);
             return rpcMessage;
         }
-        int bodyLength = fullLength - RpcConstants.HEAD_LENGTH;
-        if (bodyLength > 0) {
-            byte[] bs = new byte[bodyLength];
-            in.readBytes(bs);
-            // decompress the bytes
-            String compressName = CompressTypeEnum.getName(compressType);
-            Compress compress = ExtensionLoader.getExtensionLoader(Compress.class)
-                    .getExtension(compressName);
-            bs = compress.decompress(bs);
+        // the frame ends with the body
+        int bodyLength = in.readableBytes();
+        if (messageType == RpcConstants.RESPONSE_TYPE && version == RpcConstants.VERSION_2
+                && !responseFilter.isExpected(ctx.channel(), rpcMessage.getRequestId())) {
+            // nobody waits for it anymore, e.g. it timed out, so don't bother decoding the body
+            log.debug("drop response of request [{}]", rpcMessage.getRequestId());
+            return null;
+        }
+        if (bodyLength > 0 && deferBody && messageType == RpcConstants.REQUEST_TYPE) {
+            // the frame is released after decoding, so keep the body alive until it is decoded
+            rpcMessage.setData(in.retainedSlice(in.readerIndex(), bodyLength));
+        } else if (bodyLength > 0) {
+            rpcMessage.setData(decodeBody(in, bodyLength, codecType, compressType, bodyClass(rpcMessage)));
+        }
+        return rpcMessage;
+
+    }
+
+    /**
+     * Decode the body left in {@code rpcMessage} by a decoder created with {@code deferBody},
+     * messages whose body has already been decoded are left untouched.
+     *
+     * @param rpcMessage the message whose data is replaced by the decoded body
+     */
+    public static void decodeDeferredBody(RpcMessage rpcMessage) {
+        if (!(rpcMessage.getData() instanceof ByteBuf)) {
+            return;
+        }
+        ByteBuf body = (ByteBuf) rpcMessage.getData();
+        try {
+            rpcMessage.setData(decodeBody(body, body.readableBytes(), rpcMessage.getCodec(), rpcMessage.getCompress(), bodyClass(rpcMessage)));
+        } catch (IOException e) {
+            throw new DecoderException("Decode body error!", e);
+        } finally {
+            body.release();
+        }
+    }
+
+    private static Class<?> bodyClass(RpcMessage rpcMessage) {
+        if (rpcMessage.getMessageType() != RpcConstants.REQUEST_TYPE) {
+            return RpcResponse.class;
+        }
+        return (rpcMessage.getFlags() & RpcConstants.FLAG_METHOD_ID) != 0 ? RpcInvocation.class : RpcRequest.class;
+    }
+
+    /**
+     * Deserialize the body straight from the frame. A compressed body is decompressed into a pooled heap buffer
+     * and deserialized from there, no byte array is allocated for the body itself.
+     */
+    private static Object decodeBody(ByteBuf in, int bodyLength, byte codecType, byte compressType, Class<?> bodyClass) throws IOException {
+        String codecName = SerializationTypeEnum.getName(codecType);
+        log.debug("codec name: [{}] ", codecName);
+        Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class)
+                .getExtension(codecName);
+        if (compressType == CompressTypeEnum.NONE.getCode()) {
+            // deserialize straight from the frame
+            return serializer.deserialize(new ByteBufInputStream(in, bodyLength), bodyClass);
+        }
+        // decompress the bytes
+        String compressName = CompressTypeEnum.getName(compressType);
+        Compress compress = ExtensionLoader.getExtensionLoader(Compress.class)
+                .getExtension(compressName);
+        ByteBuf bodyBuf = null;
+        try {
+            try (InputStream decompressIn = compress.decompress(new ByteBufInputStream(in, bodyLength))) {
+                // the compressors report the decompressed size up front, so the buffer is allocated once
+                bodyBuf = in.alloc().heapBuffer(Math.max(decompressIn.available(), bodyLength));
+                readFully(decompressIn, bodyBuf, bodyLength);
+            }
             // deserialize the object
-            String codecName = SerializationTypeEnum.getName(rpcMessage.getCodec());
-            log.info("codec name: [{}] ", codecName);
-            Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class)
-                    .getExtension(codecName);
-            if (messageType == RpcConstants.REQUEST_TYPE) {
-                RpcRequest tmpValue = serializer.deserialize(bs, RpcRequest.class);
-                rpcMessage.setData(tmpValue);
-            } else {
-                RpcResponse tmpValue = serializer.deserialize(bs, RpcResponse.class);
-                rpcMessage.setData(tmpValue);
+            return serializer.deserialize(new ByteBufInputStream(bodyBuf), bodyClass);
+        } finally {
+            if (bodyBuf != null) {
+                bodyBuf.release();
             }
         }
-        return rpcMessage;
+    }
 
+    private static void readFully(InputStream in, ByteBuf out, int minGrowth) throws IOException {
+        while (true) {
+            if (out.isWritable()) {
+                if (out.writeBytes(in, out.writableBytes()) < 0) {
+                    return;
+                }
+            } else {
+                // probe for the end before growing, a full buffer usually means everything was read
+                int b = in.read();
+                if (b < 0) {
+                    return;
+                }
+                out.ensureWritable(Math.max(in.available(), minGrowth) + 1);
+                out.writeByte(b);
+            }
+        }
     }
 
-    private void checkVersion(ByteBuf in) {
-        // read the version and compare
-        byte version = in.readByte();
-        if (version != RpcConstants.VERSION) {
-            throw new RuntimeException("version isn't compatible" + version);
+    private static Map<String, String> readAttachments(ByteBuf in) {
+        int blockEnd = in.readUnsignedShort() + in.readerIndex();
+        Map<String, String> attachments = new HashMap<>();
+        while (in.readerIndex() < blockEnd) {
+            String key = in.readCharSequence(in.readUnsignedByte(), StandardCharsets.UTF_8).toString();
+            String value = in.readCharSequence(in.readUnsignedShort(), StandardCharsets.UTF_8).toString();
+            attachments.put(key, value);
+        }
+        if (in.readerIndex() != blockEnd) {
+            throw new IllegalArgumentException("attachments overrun their block");
         }
+        return attachments;
     }
 
     private void checkMagicNumber(ByteBuf in) {
-        // read the first 4 bit, which is the magic number, and compare
-        int len = RpcConstants.MAGIC_NUMBER.length;
-        byte[] tmp = new byte[len];
-        in.readBytes(tmp);
-        for (int i = 0; i < len; i++) {
-            if (tmp[i] != RpcConstants.MAGIC_NUMBER[i]) {
-                throw new IllegalArgumentException("Unknown magic code: " + Arrays.toString(tmp));
-            }
+        // read the first 4 bytes, which is the magic number, and compare
+        int magicNumber = in.readInt();
+        if (magicNumber != RpcConstants.MAGIC_NUMBER_INT) {
+            throw new IllegalArgumentException("Unknown magic code: " + Integer.toHexString(magicNumber));
         }
     }
 
+
+    /**
+     * Tells the decoder whether a response is still awaited on the channel, e.g. by a client tracking its requests
+     */
+    @FunctionalInterface
+    public interface ResponseFilter {
+        boolean isExpected(Channel channel, long requestId);
+    }
 }
@@ -1,19 +1,28 @@
 package github.javaguide.remoting.transport.netty.codec;
 
 
+import github.javaguide.compress.AdaptiveCompressPolicy;
 import github.javaguide.compress.Compress;
 import github.javaguide.enums.CompressTypeEnum;
 import github.javaguide.enums.SerializationTypeEnum;
 import github.javaguide.extension.ExtensionLoader;
+import github.javaguide.factory.SingletonFactory;
 import github.javaguide.remoting.constants.RpcConstants;
+import github.javaguide.remoting.dto.RpcInvocation;
 import github.javaguide.remoting.dto.RpcMessage;
+import github.javaguide.remoting.dto.RpcRequest;
+import github.javaguide.remoting.dto.RpcResponse;
 import github.javaguide.serialize.Serializer;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
 
 
 /**
@@ -34,6 +43,10 @@ import java.util.concurrent.atomic.AtomicInteger;
  * 1B compress（压缩类型） 1B codec（序列化类型）    4B  requestId（请求的Id）
  * body（object类型数据）
  * </pre>
+ * <p>
+ * The frame above is protocol version 1. Version 2 adds a flags byte, widens the requestId to 8 bytes and may carry
+ * a method id and attachments, see {@link RpcMessageDecoder}. Messages are encoded in the version they ask for, version 1 by default.
+ * </p>
  *
  * @author WangTao
  * @createTime on 2020/10/2
@@ -42,53 +55,179 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 public class RpcMessageEncoder extends MessageToByteEncoder<RpcMessage> {
-    private static final AtomicInteger ATOMIC_INTEGER = new AtomicInteger(0);
+    private final AdaptiveCompressPolicy compressPolicy;
+
+    public RpcMessageEncoder() {
+        this(SingletonFactory.getInstance(AdaptiveCompressPolicy.class));
+    }
+
+    /**
+     * @param compressPolicy the compression stats to use, shared by all channels unless the caller keeps them per event loop
+     */
+    public RpcMessageEncoder(AdaptiveCompressPolicy compressPolicy) {
+        this.compressPolicy = compressPolicy;
+    }
 
     @Override
     protected void encode(ChannelHandlerContext ctx, RpcMessage rpcMessage, ByteBuf out) {
+        int startIndex = out.writerIndex();
         try {
+            byte version = rpcMessage.getVersion() == 0 ? RpcConstants.VERSION_1 : rpcMessage.getVersion();
             out.writeBytes(RpcConstants.MAGIC_NUMBER);
-            out.writeByte(RpcConstants.VERSION);
+            out.writeByte(version);
             // leave a place to write the value of full length
             out.writerIndex(out.writerIndex() + 4);
             byte messageType = rpcMessage.getMessageType();
             out.writeByte(messageType);
             out.writeByte(rpcMessage.getCodec());
-            out.writeByte(CompressTypeEnum.GZIP.getCode());
-            out.writeInt(ATOMIC_INTEGER.getAndIncrement());
-            // build full length
-            byte[] bodyBytes = null;
-            int fullLength = RpcConstants.HEAD_LENGTH;
+            // the compress type actually used is only known once the body is written
+            int compressIndex = out.writerIndex();
+            out.writeByte(CompressTypeEnum.NONE.getCode());
+            // assigned per channel by the client and echoed by the server, heartbeats go without
+            long requestId = rpcMessage.getRequestId();
+            if (version == RpcConstants.VERSION_1) {
+                out.writeInt((int) requestId);
+            } else if (version == RpcConstants.VERSION_2) {
+                Map<String, String> attachments = rpcMessage.getAttachments();
+                boolean hasAttachments = attachments != null && !attachments.isEmpty();
+                byte flags = (byte) (rpcMessage.getFlags() & ~RpcConstants.FLAG_ATTACHMENTS);
+                out.writeByte(hasAttachments ? flags | RpcConstants.FLAG_ATTACHMENTS : flags);
+                out.writeLong(requestId);
+                if ((flags & (RpcConstants.FLAG_METHOD_BIND | RpcConstants.FLAG_METHOD_ID)) != 0) {
+                    out.writeInt(rpcMessage.getMethodId());
+                }
+                if (hasAttachments) {
+                    writeAttachments(attachments, out);
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown protocol version: " + version);
+            }
             // if messageType is not heartbeat message,fullLength = head length + body length
             if (messageType != RpcConstants.HEARTBEAT_REQUEST_TYPE
                     && messageType != RpcConstants.HEARTBEAT_RESPONSE_TYPE) {
-                // serialize the object
-                String codecName = SerializationTypeEnum.getName(rpcMessage.getCodec());
-                log.info("codec name: [{}] ", codecName);
-                Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class)
-                        .getExtension(codecName);
-                bodyBytes = serializer.serialize(rpcMessage.getData());
-                // compress the bytes
-                String compressName = CompressTypeEnum.getName(rpcMessage.getCompress());
-                Compress compress = ExtensionLoader.getExtensionLoader(Compress.class)
-                        .getExtension(compressName);
-                bodyBytes = compress.compress(bodyBytes);
-                fullLength += bodyBytes.length;
+                out.setByte(compressIndex, encodeBody(rpcMessage, version == RpcConstants.VERSION_2, out));
             }
-
-            if (bodyBytes != null) {
-                out.writeBytes(bodyBytes);
-            }
-            int writeIndex = out.writerIndex();
-            out.writerIndex(writeIndex - fullLength + RpcConstants.MAGIC_NUMBER.length + 1);
-            out.writeInt(fullLength);
-            out.writerIndex(writeIndex);
+            // build full length
+            int fullLength = out.writerIndex() - startIndex;
+            out.setInt(startIndex + RpcConstants.MAGIC_NUMBER.length + 1, fullLength);
         } catch (Exception e) {
             log.error("Encode request error!", e);
+            // drop the half-written frame instead of corrupting the stream
+            out.writerIndex(startIndex);
         }
 
     }
 
+    /**
+     * 2B block length, then for each entry 1B key length, key, 2B value length and value, all UTF-8
+     */
+    private static void writeAttachments(Map<String, String> attachments, ByteBuf out) {
+        int lengthIndex = out.writerIndex();
+        out.writeShort(0);
+        for (Map.Entry<String, String> attachment : attachments.entrySet()) {
+            writeString(out, attachment.getKey(), 1);
+            writeString(out, attachment.getValue(), 2);
+        }
+        int blockLength = out.writerIndex() - lengthIndex - 2;
+        if (blockLength > 0xffff) {
+            throw new IllegalArgumentException("attachments are too large: " + blockLength + " bytes");
+        }
+        out.setShort(lengthIndex, blockLength);
+    }
 
-}
+    private static void writeString(ByteBuf out, String value, int lengthFieldLength) {
+        int lengthIndex = out.writerIndex();
+        out.writeZero(lengthFieldLength);
+        int length = out.writeCharSequence(value, StandardCharsets.UTF_8);
+        if (length >= 1 << (lengthFieldLength * 8)) {
+            throw new IllegalArgumentException("attachment is too large: " + value);
+        }
+        if (lengthFieldLength == 1) {
+            out.setByte(lengthIndex, length);
+        } else {
+            out.setShort(lengthIndex, length);
+        }
+    }
 
+    /**
+     * Serialize the body straight into {@code out}. If the message asks for compression and the
+     * {@link AdaptiveCompressPolicy} agrees, the body is copied into a pooled heap buffer and compressed back into {@code out}.
+     *
+     * @param plainAllowed whether the peer reads uncompressed bodies of messages asking for compression. Version 1
+     *                     peers don't know the compress type none, their bodies are always compressed as asked
+     * @return the compress type of the written body
+     */
+    private byte encodeBody(RpcMessage rpcMessage, boolean plainAllowed, ByteBuf out) throws IOException {
+        // serialize the object
+        String codecName = SerializationTypeEnum.getName(rpcMessage.getCodec());
+        log.debug("codec name: [{}] ", codecName);
+        Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class)
+                .getExtension(codecName);
+        int bodyIndex = out.writerIndex();
+        serializer.serialize(body(rpcMessage), new ByteBufOutputStream(out));
+        int bodyLength = out.writerIndex() - bodyIndex;
+        if (rpcMessage.getCompress() == CompressTypeEnum.NONE.getCode()) {
+            return CompressTypeEnum.NONE.getCode();
+        }
+        String compressName = CompressTypeEnum.getName(rpcMessage.getCompress());
+        Compress compress = ExtensionLoader.getExtensionLoader(Compress.class)
+                .getExtension(compressName);
+        String compressKey = compressKey(rpcMessage.getData());
+        if (plainAllowed && !compressPolicy.shouldCompress(compressKey, bodyLength, compress.minCompressSize())) {
+            return CompressTypeEnum.NONE.getCode();
+        }
+        // compress the bytes
+        ByteBuf bodyBuf = out.alloc().heapBuffer(bodyLength);
+        try {
+            bodyBuf.writeBytes(out, bodyIndex, bodyLength);
+            out.writerIndex(bodyIndex);
+            try (OutputStream compressOut = compress.compress(new ByteBufOutputStream(out), serviceName(rpcMessage))) {
+                bodyBuf.getBytes(0, compressOut, bodyLength);
+            }
+            int compressedLength = out.writerIndex() - bodyIndex;
+            compressPolicy.record(compressKey, bodyLength, compressedLength);
+            if (compressedLength < bodyLength || !plainAllowed) {
+                return rpcMessage.getCompress();
+            }
+            // compression didn't pay off, send the body as it is
+            out.writerIndex(bodyIndex);
+            out.writeBytes(bodyBuf, 0, bodyLength);
+            return CompressTypeEnum.NONE.getCode();
+        } finally {
+            bodyBuf.release();
+        }
+    }
+
+    /**
+     * A request sent by method id only carries its parameters, the server knows the rest from the binding
+     */
+    private static Object body(RpcMessage rpcMessage) {
+        if ((rpcMessage.getFlags() & RpcConstants.FLAG_METHOD_ID) != 0 && rpcMessage.getData() instanceof RpcRequest) {
+            return new RpcInvocation(((RpcRequest) rpcMessage.getData()).getParameters());
+        }
+        return rpcMessage.getData();
+    }
+
+    private static String serviceName(RpcMessage rpcMessage) {
+        if (rpcMessage.getServiceName() == null && rpcMessage.getData() instanceof RpcRequest) {
+            return ((RpcRequest) rpcMessage.getData()).getInterfaceName();
+        }
+        return rpcMessage.getServiceName();
+    }
+
+    /**
+     * Requests are tracked by the invoked method. Responses don't carry the method, so they are tracked by the type of the result
+     */
+    private static String compressKey(Object data) {
+        if (data instanceof RpcRequest) {
+            // computed once per method by the client proxy
+            return ((RpcRequest) data).getMethodKey();
+        }
+        if (data instanceof RpcResponse && ((RpcResponse<?>) data).getData() != null) {
+            return ((RpcResponse<?>) data).getData().getClass().getName();
+        }
+        return data.getClass().getName();
+    }
+
+
+}
@@ -1,32 +1,34 @@
 package github.javaguide.remoting.transport.netty.server;
 
+import github.javaguide.compress.AdaptiveCompressPolicy;
 import github.javaguide.config.CustomShutdownHook;
 import github.javaguide.config.RpcServiceConfig;
+import github.javaguide.enums.RpcConfigEnum;
 import github.javaguide.factory.SingletonFactory;
 import github.javaguide.provider.ServiceProvider;
 import github.javaguide.provider.impl.ZkServiceProviderImpl;
+import github.javaguide.remoting.transport.netty.NettyTransport;
 import github.javaguide.remoting.transport.netty.codec.RpcMessageDecoder;
 import github.javaguide.remoting.transport.netty.codec.RpcMessageEncoder;
+import github.javaguide.utils.RpcConfigUtil;
 import github.javaguide.utils.RuntimeUtil;
-import github.javaguide.utils.concurrent.threadpool.ThreadPoolFactoryUtil;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.timeout.IdleStateHandler;
-import io.netty.util.concurrent.DefaultEventExecutorGroup;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -42,6 +44,11 @@ public class NettyRpcServer {
 
     public static final int PORT = 9997;
 
+    /**
+     * compression stats of the event loop thread, only used in thread-per-core mode
+     */
+    private static final ThreadLocal<AdaptiveCompressPolicy> LOOP_COMPRESS_POLICY = ThreadLocal.withInitial(AdaptiveCompressPolicy::new);
+
     private final ServiceProvider serviceProvider = SingletonFactory.getInstance(ZkServiceProviderImpl.class);
 
     public void registerService(RpcServiceConfig rpcServiceConfig) {
@@ -55,16 +62,18 @@ public class NettyRpcServer {
     public void start() {
         CustomShutdownHook.getCustomShutdownHook().clearAll();
         String host = InetAddress.getLocalHost().getHostAddress();
-        EventLoopGroup bossGroup = new NioEventLoopGroup(1);
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
-        DefaultEventExecutorGroup serviceHandlerGroup = new DefaultEventExecutorGroup(
-                RuntimeUtil.cpus() * 2,
-                ThreadPoolFactoryUtil.createThreadFactory("service-handler-group", false)
-        );
+        // one event loop per core, each connection is handled from decoding to encoding by the loop it is pinned to
+        boolean threadPerCore = "thread-per-core".equals(RpcConfigUtil.getString(RpcConfigEnum.SERVER_MODE, "dispatch"));
+        // decompress and deserialize requests on the service executors rather than on the I/O threads
+        boolean deferredDecode = !threadPerCore && RpcConfigUtil.getBoolean(RpcConfigEnum.SERVER_DEFERRED_DECODE, true);
+        // several server sockets share the port through SO_REUSEPORT, each accepts on its own boss thread
+        int acceptors = NettyTransport.isEpoll() ? Math.max(1, RpcConfigUtil.getInt(RpcConfigEnum.SERVER_ACCEPTORS, 1)) : 1;
+        EventLoopGroup bossGroup = NettyTransport.newEventLoopGroup(acceptors);
+        EventLoopGroup workerGroup = NettyTransport.newEventLoopGroup(threadPerCore ? RuntimeUtil.cpus() : 0);
         try {
             ServerBootstrap b = new ServerBootstrap();
             b.group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(NettyTransport.serverSocketChannelClass())
                     // TCP默认开启了 Nagle 算法，该算法的作用是尽可能的发送大数据快，减少网络传输。TCP_NODELAY 参数的作用就是控制是否启用 Nagle 算法。
                     .childOption(ChannelOption.TCP_NODELAY, true)
                     // 是否开启 TCP 底层心跳机制
@@ -79,23 +88,33 @@ public class NettyRpcServer {
                             // 30 秒之内没有收到客户端请求的话就关闭连接
                             ChannelPipeline p = ch.pipeline();
                             p.addLast(new IdleStateHandler(30, 0, 0, TimeUnit.SECONDS));
-                            p.addLast(new RpcMessageEncoder());
-                            p.addLast(new RpcMessageDecoder());
-                            p.addLast(serviceHandlerGroup, new NettyRpcServerHandler());
+                            // batch the flushes of the messages below, before the encoder so it sees their bytes
+                            NettyTransport.addFlushCoalescing(p);
+                            // initChannel runs on the event loop of the channel, so the loop's own stats are picked up
+                            p.addLast(threadPerCore ? new RpcMessageEncoder(LOOP_COMPRESS_POLICY.get()) : new RpcMessageEncoder());
+                            p.addLast(new RpcMessageDecoder(deferredDecode));
+                            // runs on the I/O thread and hands every request to the executor of its service, see ServiceExecutors.
+                            // @RpcNonBlocking methods are called right there
+                            p.addLast(new NettyRpcServerHandler());
                         }
                     });
 
+            NettyTransport.configure(b, acceptors);
             // 绑定端口，同步等待绑定成功
-            ChannelFuture f = b.bind(host, PORT).sync();
+            List<ChannelFuture> futures = new ArrayList<>(acceptors);
+            for (int i = 0; i < acceptors; i++) {
+                futures.add(b.bind(host, PORT).sync());
+            }
             // 等待服务端监听端口关闭
-            f.channel().closeFuture().sync();
+            for (ChannelFuture f : futures) {
+                f.channel().closeFuture().sync();
+            }
         } catch (InterruptedException e) {
             log.error("occur exception when start server:", e);
         } finally {
             log.error("shutdown bossGroup and workerGroup");
             bossGroup.shutdownGracefully();
             workerGroup.shutdownGracefully();
-            serviceHandlerGroup.shutdownGracefully();
         }
     }
 
@@ -1,14 +1,23 @@
 package github.javaguide.remoting.transport.netty.server;
 
 import github.javaguide.enums.CompressTypeEnum;
+import github.javaguide.enums.RpcConfigEnum;
+import github.javaguide.enums.RpcErrorMessageEnum;
 import github.javaguide.enums.RpcResponseCodeEnum;
 import github.javaguide.enums.SerializationTypeEnum;
+import github.javaguide.exception.RpcException;
 import github.javaguide.factory.SingletonFactory;
 import github.javaguide.remoting.constants.RpcConstants;
+import github.javaguide.remoting.dto.RpcInvocation;
 import github.javaguide.remoting.dto.RpcMessage;
 import github.javaguide.remoting.dto.RpcRequest;
 import github.javaguide.remoting.dto.RpcResponse;
 import github.javaguide.remoting.handler.RpcRequestHandler;
+import github.javaguide.remoting.handler.ServiceMethod;
+import github.javaguide.remoting.transport.netty.FlushCoalescingHandler;
+import github.javaguide.remoting.transport.netty.codec.RpcMessageDecoder;
+import github.javaguide.utils.RpcConfigUtil;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
@@ -18,6 +27,12 @@ import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.ReferenceCountUtil;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
 /**
  * Customize the ChannelHandler of the server to process the data sent by the client.
  * <p>
@@ -30,45 +45,196 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class NettyRpcServerHandler extends ChannelInboundHandlerAdapter {
 
+    private static final byte DEFAULT_COMPRESS_TYPE = CompressTypeEnum.getCode(
+            RpcConfigUtil.getString(RpcConfigEnum.COMPRESS_TYPE, CompressTypeEnum.GZIP.getName()));
+
     private final RpcRequestHandler rpcRequestHandler;
+    private final ServiceExecutors serviceExecutors;
+    /**
+     * methods the client of this channel has bound to method ids. Requests of one channel run on several threads
+     * at once, the I/O thread reads the map while the service threads bind methods
+     */
+    private final Map<Integer, ServiceMethod> boundMethods = new ConcurrentHashMap<>();
 
     public NettyRpcServerHandler() {
+        this(SingletonFactory.getInstance(ServiceExecutors.class));
+    }
+
+    NettyRpcServerHandler(ServiceExecutors serviceExecutors) {
         this.rpcRequestHandler = SingletonFactory.getInstance(RpcRequestHandler.class);
+        this.serviceExecutors = serviceExecutors;
     }
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (!(msg instanceof RpcMessage)) {
+            //Ensure that ByteBuf is released, otherwise there may be memory leaks
+            ReferenceCountUtil.release(msg);
+            return;
+        }
+        RpcMessage requestMessage = (RpcMessage) msg;
+        log.info("server receive msg: [{}] ", requestMessage);
+        RpcMessage rpcMessage = new RpcMessage();
+        // answer in the protocol version of the request, so version 1 clients keep working
+        rpcMessage.setVersion(requestMessage.getVersion());
+        rpcMessage.setRequestId(requestMessage.getRequestId());
+        rpcMessage.setCodec(SerializationTypeEnum.HESSIAN.getCode());
+        // answer with the compress type the client asked for. Version 2 clients send small requests uncompressed and
+        // don't tell, an uncompressed version 1 request comes from a client that doesn't compress at all
+        byte requestCompress = requestMessage.getCompress();
+        rpcMessage.setCompress(requestCompress != CompressTypeEnum.NONE.getCode() || requestMessage.getVersion() == RpcConstants.VERSION_1
+                ? requestCompress : DEFAULT_COMPRESS_TYPE);
+        if (requestMessage.getMessageType() == RpcConstants.HEARTBEAT_REQUEST_TYPE) {
+            rpcMessage.setMessageType(RpcConstants.HEARTBEAT_RESPONSE_TYPE);
+            rpcMessage.setData(RpcConstants.PONG);
+            ctx.writeAndFlush(rpcMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+            return;
+        }
+        ServiceMethod serviceMethod = null;
+        if ((requestMessage.getFlags() & RpcConstants.FLAG_METHOD_ID) != 0) {
+            // a bound call names its method in the header, so it goes straight to the executor of its service
+            serviceMethod = boundMethods.get(requestMessage.getMethodId());
+            if (serviceMethod == null) {
+                releaseBody(requestMessage);
+                throw new RpcException(RpcErrorMessageEnum.UNKNOWN_METHOD_ID, String.valueOf(requestMessage.getMethodId()));
+            }
+        }
+        if (requestMessage.getData() instanceof ByteBuf
+                && serviceExecutors.isVirtual(serviceMethod == null ? null : serviceMethod.getExecutor())) {
+            // a virtual thread would build the per-thread compressors and buffers of the codecs for this one request,
+            // see ServiceExecutors
+            RpcMessageDecoder.decodeDeferredBody(requestMessage);
+        }
+        if (serviceMethod == null && requestMessage.getData() instanceof RpcRequest) {
+            // decoded by the I/O thread already, see RpcMessageDecoder
+            serviceMethod = resolve(requestMessage, (RpcRequest) requestMessage.getData());
+        }
+        if (serviceMethod != null && serviceMethod.isNonBlocking()) {
+            // a trivial method costs less than the handoff to an executor and back, call it right here
+            process(ctx, requestMessage, rpcMessage, serviceMethod);
+            return;
+        }
+        // a full request still undecoded is decoded on the default executor to find its method
+        dispatch(ctx, requestMessage, rpcMessage, serviceMethod);
+    }
+
+    /**
+     * Hand the request to the executor of its service, a request rejected by a full executor is answered with a failure
+     */
+    private void dispatch(ChannelHandlerContext ctx, RpcMessage requestMessage, RpcMessage rpcMessage, ServiceMethod serviceMethod) {
+        Executor executor = serviceExecutors.get(serviceMethod == null ? null : serviceMethod.getExecutor());
+        try {
+            executor.execute(() -> process(ctx, requestMessage, rpcMessage, serviceMethod));
+        } catch (RejectedExecutionException e) {
+            releaseBody(requestMessage);
+            rpcMessage.setMessageType(RpcConstants.RESPONSE_TYPE);
+            writeResponse(ctx, rpcMessage, null, null, e, false);
+        }
+    }
+
+    /**
+     * Decode the body and call the method, on a thread of the executor the request was dispatched to
+     *
+     * @param serviceMethod the bound method of the call, null if the request must be resolved first
+     */
+    private void process(ChannelHandlerContext ctx, RpcMessage requestMessage, RpcMessage rpcMessage, ServiceMethod serviceMethod) {
         try {
-            if (msg instanceof RpcMessage) {
-                log.info("server receive msg: [{}] ", msg);
-                byte messageType = ((RpcMessage) msg).getMessageType();
-                RpcMessage rpcMessage = new RpcMessage();
-                rpcMessage.setCodec(SerializationTypeEnum.HESSIAN.getCode());
-                rpcMessage.setCompress(CompressTypeEnum.GZIP.getCode());
-                if (messageType == RpcConstants.HEARTBEAT_REQUEST_TYPE) {
-                    rpcMessage.setMessageType(RpcConstants.HEARTBEAT_RESPONSE_TYPE);
-                    rpcMessage.setData(RpcConstants.PONG);
-                } else {
-                    RpcRequest rpcRequest = (RpcRequest) ((RpcMessage) msg).getData();
-                    // Execute the target method (the method the client needs to execute) and return the method result
-                    Object result = rpcRequestHandler.handle(rpcRequest);
-                    log.info(String.format("server get result: %s", result.toString()));
-                    rpcMessage.setMessageType(RpcConstants.RESPONSE_TYPE);
-                    if (ctx.channel().isActive() && ctx.channel().isWritable()) {
-                        RpcResponse<Object> rpcResponse = RpcResponse.success(result, rpcRequest.getRequestId());
-                        rpcMessage.setData(rpcResponse);
-                    } else {
-                        RpcResponse<Object> rpcResponse = RpcResponse.fail(RpcResponseCodeEnum.FAIL);
-                        rpcMessage.setData(rpcResponse);
-                        log.error("not writable now, message dropped");
-                    }
+            // the body may have been left undecoded by the I/O thread, see RpcMessageDecoder
+            RpcMessageDecoder.decodeDeferredBody(requestMessage);
+            Object body = requestMessage.getData();
+            if (serviceMethod == null) {
+                serviceMethod = resolve(requestMessage, (RpcRequest) body);
+                if (!serviceMethod.isNonBlocking()
+                        && serviceExecutors.get(serviceMethod.getExecutor()) != serviceExecutors.get(null)) {
+                    // the method itself runs in the bulkhead of its service
+                    dispatch(ctx, requestMessage, rpcMessage, serviceMethod);
+                    return;
                 }
-                ctx.writeAndFlush(rpcMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
             }
-        } finally {
-            //Ensure that ByteBuf is released, otherwise there may be memory leaks
-            ReferenceCountUtil.release(msg);
+            Object[] parameters;
+            String requestId = null;
+            if (body instanceof RpcInvocation) {
+                parameters = ((RpcInvocation) body).getParameters();
+            } else {
+                parameters = ((RpcRequest) body).getParameters();
+                requestId = ((RpcRequest) body).getRequestId();
+            }
+            rpcMessage.setMessageType(RpcConstants.RESPONSE_TYPE);
+            rpcMessage.setServiceName(serviceMethod.getInterfaceName());
+            int methodId = requestMessage.getMethodId();
+            if ((requestMessage.getFlags() & RpcConstants.FLAG_METHOD_BIND) != 0
+                    && boundMethods.get(methodId) == serviceMethod) {
+                // acknowledge the binding, the client sends the method id from now on
+                rpcMessage.setFlags(RpcConstants.FLAG_METHOD_BIND);
+                rpcMessage.setMethodId(methodId);
+            }
+            String responseRequestId = requestId;
+            boolean lowLatency = serviceMethod.isLowLatency();
+            // Execute the target method (the method the client needs to execute) and return the method result.
+            // A method returning a CompletableFuture is answered once it completes, this thread doesn't wait for it
+            CompletableFuture<Object> invocation = rpcRequestHandler.invokeAsync(serviceMethod, parameters);
+            // a pending future keeps its slot in a profile limiting concurrent requests
+            ServiceExecutors.releaseWhenComplete(invocation);
+            invocation.whenComplete((result, cause) -> writeResponse(ctx, rpcMessage, responseRequestId, result, cause, lowLatency));
+        } catch (Throwable e) {
+            releaseBody(requestMessage);
+            exceptionCaught(ctx, e);
+        }
+    }
+
+    /**
+     * Release the body a request left undecoded, see RpcMessageDecoder
+     */
+    private static void releaseBody(RpcMessage requestMessage) {
+        if (requestMessage.getData() instanceof ByteBuf) {
+            ReferenceCountUtil.release(requestMessage.getData());
+            requestMessage.setData(null);
+        }
+    }
+
+    /**
+     * Write the response of a call. Called by the service thread or the thread that completed an asynchronous service
+     * method, the response itself is written on the event loop of the channel
+     */
+    private static void writeResponse(ChannelHandlerContext ctx, RpcMessage rpcMessage, String requestId, Object result,
+                                      Throwable cause, boolean lowLatency) {
+        if (!ctx.executor().inEventLoop()) {
+            // answer on the event loop of the channel, the service thread, possibly a virtual one, is done with the call
+            ctx.executor().execute(() -> writeResponse(ctx, rpcMessage, requestId, result, cause, lowLatency));
+            return;
+        }
+        RpcResponse<Object> rpcResponse;
+        if (cause != null) {
+            log.error("service invocation failed", cause);
+            rpcResponse = RpcResponse.fail(RpcResponseCodeEnum.FAIL);
+        } else if (ctx.channel().isActive() && ctx.channel().isWritable()) {
+            log.info("server get result: [{}]", result);
+            rpcResponse = RpcResponse.success(result, requestId);
+        } else {
+            rpcResponse = RpcResponse.fail(RpcResponseCodeEnum.FAIL);
+            log.error("not writable now, message dropped");
+        }
+        rpcMessage.setData(rpcResponse);
+        if (lowLatency) {
+            ctx.write(rpcMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+            FlushCoalescingHandler.flushNow(ctx.channel());
+        } else {
+            // flushed together with the other responses of this read or event loop tick, see FlushCoalescingHandler
+            ctx.writeAndFlush(rpcMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+        }
+    }
+
+    /**
+     * Resolve the method of a full request, and bind it to the method id of the frame if the client asks for it
+     */
+    private ServiceMethod resolve(RpcMessage requestMessage, RpcRequest rpcRequest) {
+        ServiceMethod serviceMethod = rpcRequestHandler.resolve(rpcRequest);
+        int methodId = requestMessage.getMethodId();
+        if ((requestMessage.getFlags() & RpcConstants.FLAG_METHOD_BIND) != 0
+                && (boundMethods.size() < RpcConstants.MAX_METHOD_IDS || boundMethods.containsKey(methodId))) {
+            boundMethods.put(methodId, serviceMethod);
         }
+        return serviceMethod;
     }
 
     @Override
@@ -0,0 +1,202 @@
+package github.javaguide.remoting.transport.netty.server;
+
+import github.javaguide.enums.RpcConfigEnum;
+import github.javaguide.utils.RpcConfigUtil;
+import github.javaguide.utils.RuntimeUtil;
+import github.javaguide.utils.StringUtil;
+import github.javaguide.utils.concurrent.threadpool.CustomThreadPoolConfig;
+import github.javaguide.utils.concurrent.threadpool.ThreadPoolFactoryUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * The executors service methods run on, one bulkhead per executor profile named by
+ * {@link github.javaguide.annotation.RpcService#executor()}.
+ * <p>
+ * Each profile has its own threads, bounded queue and rejection policy, so a slow service fills only its own
+ * queue instead of starving the services of other profiles. Requests are dispatched one by one, calls coming in
+ * over the same connection may run on different threads of a profile.
+ * </p>
+ * <p>
+ * A profile in virtual mode runs every request on a virtual thread of its own, for services blocking on JDBC and
+ * similar calls. It has no queue, requests beyond the optional max concurrency are rejected. A request counts
+ * against the max concurrency until its response is ready, including the time an asynchronous method takes to
+ * complete the future it returned, see {@link #releaseWhenComplete(CompletionStage)}.
+ * </p>
+ * <p>
+ * Request bodies for a virtual profile are decoded on the netty I/O thread even with deferred decode. The codecs keep
+ * their compressors and scratch buffers per thread, a virtual thread lives for one request only and would allocate
+ * them again each time, leaving the native memory of the compressors to the garbage collector. Deserialization then
+ * costs I/O thread time again, a service whose requests are large and compressed is better off on a pool profile.
+ * </p>
+ */
+@Slf4j
+public class ServiceExecutors {
+
+    public static final String DEFAULT_PROFILE = "default";
+    private static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    private final Map<String, Executor> executors = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> virtualProfiles = new ConcurrentHashMap<>();
+    private final Function<String, Executor> executorFactory;
+    private final Predicate<String> virtualMode;
+
+    public ServiceExecutors() {
+        this(ServiceExecutors::createExecutor, ServiceExecutors::isVirtualMode);
+    }
+
+    ServiceExecutors(Function<String, Executor> executorFactory) {
+        this(executorFactory, profile -> false);
+    }
+
+    ServiceExecutors(Function<String, Executor> executorFactory, Predicate<String> virtualMode) {
+        this.executorFactory = executorFactory;
+        this.virtualMode = virtualMode;
+    }
+
+    /**
+     * @param profile the executor profile, empty or null for the default profile
+     */
+    public Executor get(String profile) {
+        return executors.computeIfAbsent(profileName(profile), executorFactory);
+    }
+
+    /**
+     * @param profile the executor profile, empty or null for the default profile
+     * @return true if the profile runs each request on a thread of its own, its requests must be decoded before
+     * they are dispatched
+     */
+    public boolean isVirtual(String profile) {
+        return virtualProfiles.computeIfAbsent(profileName(profile), virtualMode::test);
+    }
+
+    private static String profileName(String profile) {
+        return StringUtil.isBlank(profile) ? DEFAULT_PROFILE : profile;
+    }
+
+    private static boolean isVirtualMode(String profile) {
+        return "virtual".equals(RpcConfigUtil.getString(profilePrefix(profile) + "mode", "pool"));
+    }
+
+    private static String profilePrefix(String profile) {
+        return RpcConfigEnum.SERVER_EXECUTOR.getPropertyValue() + "." + profile + ".";
+    }
+
+    /**
+     * Keeps the max concurrency permit of the request running on this thread until the stage completes, instead of
+     * releasing it as soon as the task returns. Does nothing on threads not running a limited task
+     */
+    public static void releaseWhenComplete(CompletionStage<?> stage) {
+        Semaphore permits = ConcurrencyLimitedExecutor.RUNNING.get();
+        if (permits == null) {
+            return;
+        }
+        ConcurrencyLimitedExecutor.RUNNING.remove();
+        stage.whenComplete((result, cause) -> permits.release());
+    }
+
+    private static Executor createExecutor(String profile) {
+        String prefix = profilePrefix(profile);
+        if (isVirtualMode(profile)) {
+            // blocking services aren't capped by a pool, only by the optional limit on concurrent requests
+            int maxConcurrency = RpcConfigUtil.getInt(prefix + "max-concurrency", 0);
+            log.info("executor profile [{}]: a virtual thread per request, max concurrency [{}]", profile, maxConcurrency);
+            Executor executor = virtualThreadExecutor(profile);
+            return maxConcurrency > 0 ? new ConcurrencyLimitedExecutor(executor, maxConcurrency) : executor;
+        }
+        int threads = RpcConfigUtil.getInt(prefix + "threads", RuntimeUtil.cpus() * 2);
+        int queueSize = RpcConfigUtil.getInt(prefix + "queue-size", DEFAULT_QUEUE_SIZE);
+        String rejection = RpcConfigUtil.getString(prefix + "rejection", "abort");
+        CustomThreadPoolConfig customThreadPoolConfig = new CustomThreadPoolConfig();
+        customThreadPoolConfig.setCorePoolSize(threads);
+        customThreadPoolConfig.setMaximumPoolSize(threads);
+        customThreadPoolConfig.setKeepAliveTime(0);
+        customThreadPoolConfig.setUnit(TimeUnit.MILLISECONDS);
+        customThreadPoolConfig.setWorkQueue(new ArrayBlockingQueue<>(queueSize));
+        customThreadPoolConfig.setRejectedExecutionHandler(rejectionPolicy(rejection));
+        log.info("executor profile [{}]: threads [{}], queue size [{}], rejection [{}]", profile, threads, queueSize, rejection);
+        return ThreadPoolFactoryUtil.createCustomThreadPoolIfAbsent(customThreadPoolConfig, "rpc-service-" + profile, false);
+    }
+
+    /**
+     * An executor starting a virtual thread per task. Virtual threads need Java 21 while the framework is built for
+     * Java 8, so the factory method is looked up at runtime, older JVMs get a platform thread per task instead
+     */
+    private static Executor virtualThreadExecutor(String profile) {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            log.warn("virtual threads are not supported by this JVM, executor profile [{}] starts a thread per request", profile);
+            return Executors.newCachedThreadPool(ThreadPoolFactoryUtil.createThreadFactory("rpc-service-" + profile, true));
+        }
+    }
+
+    /**
+     * There is no policy dropping requests silently, a dropped task would keep the undecoded body it holds and leave
+     * the client waiting for its timeout
+     */
+    private static RejectedExecutionHandler rejectionPolicy(String rejection) {
+        switch (rejection) {
+            case "abort":
+                // the request is answered with a failure right away
+                return new ThreadPoolExecutor.AbortPolicy();
+            case "caller-runs":
+                // the netty I/O thread runs the request, which slows down reading from the connection
+                return new ThreadPoolExecutor.CallerRunsPolicy();
+            default:
+                throw new IllegalArgumentException("unknown rejection policy: " + rejection);
+        }
+    }
+
+    /**
+     * Rejects tasks while the given number of tasks are running, instead of queueing them
+     */
+    static final class ConcurrencyLimitedExecutor implements Executor {
+        // permits of the task running on this thread, taken over by releaseWhenComplete
+        private static final ThreadLocal<Semaphore> RUNNING = new ThreadLocal<>();
+        private final Executor executor;
+        private final Semaphore permits;
+
+        ConcurrencyLimitedExecutor(Executor executor, int maxConcurrency) {
+            this.executor = executor;
+            this.permits = new Semaphore(maxConcurrency);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (!permits.tryAcquire()) {
+                throw new RejectedExecutionException("too many concurrent requests");
+            }
+            try {
+                executor.execute(() -> {
+                    RUNNING.set(permits);
+                    try {
+                        task.run();
+                    } finally {
+                        // still set unless the task handed its permit over to a pending future
+                        if (RUNNING.get() != null) {
+                            RUNNING.remove();
+                            permits.release();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                throw e;
+            }
+        }
+    }
+}
@@ -5,7 +5,7 @@ import github.javaguide.config.RpcServiceConfig;
 import github.javaguide.factory.SingletonFactory;
 import github.javaguide.provider.ServiceProvider;
 import github.javaguide.provider.impl.ZkServiceProviderImpl;
-import github.javaguide.utils.concurrent.threadpool.ThreadPoolFactoryUtil;
+import github.javaguide.remoting.transport.netty.server.ServiceExecutors;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
@@ -13,7 +13,8 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import static github.javaguide.remoting.transport.netty.server.NettyRpcServer.PORT;
 
@@ -26,15 +27,15 @@ import static github.javaguide.remoting.transport.netty.server.NettyRpcServer.PO
 @Slf4j
 public class SocketRpcServer {
 
-    private final ExecutorService threadPool;
+    private final Executor threadPool;
     private final ServiceProvider serviceProvider;
 
     public SocketRpcServer() {
         /**
-         * 创建了一个线程池
-         * 用来跟client端交互的时候，处理client端的请求
+         * 用 default 执行器配置的线程池处理client端的请求，配置成 virtual 时每个连接一个虚拟线程
+         * 见 rpc.server.executor.default.*
          */
-        threadPool = ThreadPoolFactoryUtil.createCustomThreadPoolIfAbsent("socket-server-rpc-pool");
+        threadPool = SingletonFactory.getInstance(ServiceExecutors.class).get(ServiceExecutors.DEFAULT_PROFILE);
         // 这个zookeeper好粗糙，直接就是指定了这个类，里面 construction 直接给new出来了
         serviceProvider = SingletonFactory.getInstance(ZkServiceProviderImpl.class);
     }
@@ -61,9 +62,13 @@ public class SocketRpcServer {
                  * SocketRpcRequestHandlerRunnable 这个才是重点！
                  * 这里要等到client端调用到这里的时候断点进去看，服务端内部一个线程池，当然也有netty接收的办法
                  */
-                threadPool.execute(new SocketRpcRequestHandlerRunnable(socket));
+                try {
+                    threadPool.execute(new SocketRpcRequestHandlerRunnable(socket));
+                } catch (RejectedExecutionException e) {
+                    log.error("too many requests, close the connection of [{}]", socket.getInetAddress());
+                    socket.close();
+                }
             }
-            threadPool.shutdown();
         } catch (IOException e) {
             log.error("occur IOException:", e);
         }
@@ -1,7 +1,13 @@
 package github.javaguide.serialize;
 
+import github.javaguide.exception.SerializeException;
 import github.javaguide.extension.SPI;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 /**
  * 序列化接口，所有序列化类都要实现这个接口
  *
@@ -18,6 +24,21 @@ public interface Serializer {
      */
     byte[] serialize(Object obj);
 
+    /**
+     * 序列化到输出流，用于直接写入 Netty 的 ByteBuf，避免中间的字节数组。
+     * 默认实现退化为 {@link #serialize(Object)} 再整体写入，实现类应尽量重写该方法
+     *
+     * @param obj          要序列化的对象
+     * @param outputStream 目标输出流，方法返回后不会被关闭
+     */
+    default void serialize(Object obj, OutputStream outputStream) {
+        try {
+            outputStream.write(serialize(obj));
+        } catch (IOException e) {
+            throw new SerializeException("Serialization failed");
+        }
+    }
+
     /**
      * 反序列化
      *
@@ -28,4 +49,26 @@ public interface Serializer {
      * @return 反序列化的对象
      */
     <T> T deserialize(byte[] bytes, Class<T> clazz);
+
+    /**
+     * 从输入流反序列化，用于直接读取 Netty 的 ByteBuf，避免中间的字节数组。
+     * 默认实现退化为读出全部字节再调用 {@link #deserialize(byte[], Class)}，实现类应尽量重写该方法
+     *
+     * @param inputStream 序列化后的数据，方法返回后不会被关闭
+     * @param clazz       目标类
+     * @param <T>         类的类型
+     * @return 反序列化的对象
+     */
+    default <T> T deserialize(InputStream inputStream, Class<T> clazz) {
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            byte[] buffer = new byte[1024];
+            int n;
+            while ((n = inputStream.read(buffer)) > -1) {
+                out.write(buffer, 0, n);
+            }
+            return deserialize(out.toByteArray(), clazz);
+        } catch (IOException e) {
+            throw new SerializeException("Deserialization failed");
+        }
+    }
 }
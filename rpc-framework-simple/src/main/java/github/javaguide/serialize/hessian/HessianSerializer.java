@@ -8,6 +8,8 @@ import github.javaguide.serialize.Serializer;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Hessian is a dynamically-typed, binary serialization and Web Services protocol designed for object-oriented transmission.
@@ -19,16 +21,28 @@ public class HessianSerializer implements Serializer {
     @Override
     public byte[] serialize(Object obj) {
         try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream()) {
-            HessianOutput hessianOutput = new HessianOutput(byteArrayOutputStream);
-            hessianOutput.writeObject(obj);
+            serialize(obj, byteArrayOutputStream);
 
             return byteArrayOutputStream.toByteArray();
+        } catch (SerializeException e) {
+            throw e;
         } catch (Exception e) {
             throw new SerializeException("Serialization failed");
         }
 
     }
 
+    @Override
+    public void serialize(Object obj, OutputStream outputStream) {
+        try {
+            HessianOutput hessianOutput = new HessianOutput(outputStream);
+            hessianOutput.writeObject(obj);
+            hessianOutput.flush();
+        } catch (Exception e) {
+            throw new SerializeException("Serialization failed");
+        }
+    }
+
     @Override
     public <T> T deserialize(byte[] bytes, Class<T> clazz) {
 
@@ -43,4 +57,16 @@ public class HessianSerializer implements Serializer {
         }
 
     }
+
+    @Override
+    public <T> T deserialize(InputStream inputStream, Class<T> clazz) {
+        try {
+            HessianInput hessianInput = new HessianInput(inputStream);
+            Object o = hessianInput.readObject();
+
+            return clazz.cast(o);
+        } catch (Exception e) {
+            throw new SerializeException("Deserialization failed");
+        }
+    }
 }
@@ -4,6 +4,7 @@ import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import github.javaguide.exception.SerializeException;
+import github.javaguide.remoting.dto.RpcInvocation;
 import github.javaguide.remoting.dto.RpcRequest;
 import github.javaguide.remoting.dto.RpcResponse;
 import github.javaguide.serialize.Serializer;
@@ -11,6 +12,8 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Kryo serialization class, Kryo serialization efficiency is very high, but only compatible with Java language
@@ -28,6 +31,7 @@ public class KryoSerializer implements Serializer {
         Kryo kryo = new Kryo();
         kryo.register(RpcResponse.class);
         kryo.register(RpcRequest.class);
+        kryo.register(RpcInvocation.class);
         return kryo;
     });
 
@@ -45,6 +49,20 @@ public class KryoSerializer implements Serializer {
         }
     }
 
+    @Override
+    public void serialize(Object obj, OutputStream outputStream) {
+        try {
+            // Output#close would also close the target stream, so only flush the buffered bytes into it
+            Output output = new Output(outputStream);
+            Kryo kryo = kryoThreadLocal.get();
+            kryo.writeObject(output, obj);
+            kryoThreadLocal.remove();
+            output.flush();
+        } catch (Exception e) {
+            throw new SerializeException("Serialization failed");
+        }
+    }
+
     @Override
     public <T> T deserialize(byte[] bytes, Class<T> clazz) {
         try (ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes);
@@ -59,4 +77,17 @@ public class KryoSerializer implements Serializer {
         }
     }
 
+    @Override
+    public <T> T deserialize(InputStream inputStream, Class<T> clazz) {
+        try {
+            Input input = new Input(inputStream);
+            Kryo kryo = kryoThreadLocal.get();
+            Object o = kryo.readObject(input, clazz);
+            kryoThreadLocal.remove();
+            return clazz.cast(o);
+        } catch (Exception e) {
+            throw new SerializeException("Deserialization failed");
+        }
+    }
+
 }
@@ -1,11 +1,16 @@
 package github.javaguide.serialize.protostuff;
 
+import github.javaguide.exception.SerializeException;
 import github.javaguide.serialize.Serializer;
 import io.protostuff.LinkedBuffer;
 import io.protostuff.ProtostuffIOUtil;
 import io.protostuff.Schema;
 import io.protostuff.runtime.RuntimeSchema;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 /**
  * @author TangMinXuan
  * @createTime 2020年11月09日 20:13
@@ -30,6 +35,19 @@ public class ProtostuffSerializer implements Serializer {
         return bytes;
     }
 
+    @Override
+    public void serialize(Object obj, OutputStream outputStream) {
+        Class<?> clazz = obj.getClass();
+        Schema schema = RuntimeSchema.getSchema(clazz);
+        try {
+            ProtostuffIOUtil.writeTo(outputStream, obj, schema, BUFFER);
+        } catch (IOException e) {
+            throw new SerializeException("Serialization failed");
+        } finally {
+            BUFFER.clear();
+        }
+    }
+
     @Override
     public <T> T deserialize(byte[] bytes, Class<T> clazz) {
         Schema<T> schema = RuntimeSchema.getSchema(clazz);
@@ -37,4 +55,16 @@ public class ProtostuffSerializer implements Serializer {
         ProtostuffIOUtil.mergeFrom(bytes, obj, schema);
         return obj;
     }
+
+    @Override
+    public <T> T deserialize(InputStream inputStream, Class<T> clazz) {
+        Schema<T> schema = RuntimeSchema.getSchema(clazz);
+        T obj = schema.newMessage();
+        try {
+            ProtostuffIOUtil.mergeFrom(inputStream, obj, schema);
+        } catch (IOException e) {
+            throw new SerializeException("Deserialization failed");
+        }
+        return obj;
+    }
 }
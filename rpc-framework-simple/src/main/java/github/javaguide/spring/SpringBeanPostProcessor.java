@@ -3,6 +3,7 @@ package github.javaguide.spring;
 import github.javaguide.annotation.RpcReference;
 import github.javaguide.annotation.RpcService;
 import github.javaguide.config.RpcServiceConfig;
+import github.javaguide.enums.RpcConfigEnum;
 import github.javaguide.enums.RpcRequestTransportEnum;
 import github.javaguide.extension.ExtensionLoader;
 import github.javaguide.factory.SingletonFactory;
@@ -10,6 +11,7 @@ import github.javaguide.provider.ServiceProvider;
 import github.javaguide.provider.impl.ZkServiceProviderImpl;
 import github.javaguide.proxy.RpcClientProxy;
 import github.javaguide.remoting.transport.RpcRequestTransport;
+import github.javaguide.utils.RpcConfigUtil;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeansException;
@@ -30,12 +32,14 @@ public class SpringBeanPostProcessor implements BeanPostProcessor {
 
     private final ServiceProvider serviceProvider;
     private final RpcRequestTransport rpcClient;
+    private final boolean useStubs;
 
     // 构造函数，初始化serviceProvider和rpcClient
     public SpringBeanPostProcessor() {
         this.serviceProvider = SingletonFactory.getInstance(ZkServiceProviderImpl.class);
         this.rpcClient = ExtensionLoader.getExtensionLoader(RpcRequestTransport.class)
                 .getExtension(RpcRequestTransportEnum.NETTY.getName());
+        this.useStubs = "bytecode".equals(RpcConfigUtil.getString(RpcConfigEnum.CLIENT_STUB, "proxy"));
     }
 
     // 在Bean初始化之前进行处理，如果Bean类上有RpcService注解，则进行服务发布
@@ -50,6 +54,7 @@ public class SpringBeanPostProcessor implements BeanPostProcessor {
             RpcServiceConfig rpcServiceConfig = RpcServiceConfig.builder()
                     .group(rpcService.group())
                     .version(rpcService.version())
+                    .executor(rpcService.executor())
                     .service(bean).build();
             // 发布服务
             serviceProvider.publishService(rpcServiceConfig);
@@ -67,11 +72,13 @@ public class SpringBeanPostProcessor implements BeanPostProcessor {
             if (rpcReference != null) {
                 RpcServiceConfig rpcServiceConfig = RpcServiceConfig.builder()
                         .group(rpcReference.group())
-                        .version(rpcReference.version()).build();
+                        .version(rpcReference.version())
+                        .timeout(rpcReference.timeout()).build();
                 // 创建RpcClientProxy
                 RpcClientProxy rpcClientProxy = new RpcClientProxy(rpcClient, rpcServiceConfig);
-                // 获取代理对象
-                Object clientProxy = rpcClientProxy.getProxy(declaredField.getType());
+                // 获取代理对象，配置了bytecode时注入生成的stub
+                Object clientProxy = useStubs ? rpcClientProxy.getStub(declaredField.getType())
+                        : rpcClientProxy.getProxy(declaredField.getType());
                 declaredField.setAccessible(true);
                 try {
                     /**
@@ -0,0 +1,27 @@
+package github.javaguide.compress;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveCompressPolicyTest {
+
+    @Test
+    void skipSmallBodies() {
+        AdaptiveCompressPolicy policy = new AdaptiveCompressPolicy(1024, 10);
+        assertFalse(policy.shouldCompress("hello", 100));
+        assertTrue(policy.shouldCompress("hello", 2048));
+    }
+
+    @Test
+    void stopCompressingPoorRatio() {
+        AdaptiveCompressPolicy policy = new AdaptiveCompressPolicy(1024, 10);
+        for (int i = 0; i < 32; i++) {
+            policy.record("random", 2048, 2000);
+            policy.record("text", 2048, 300);
+        }
+        assertFalse(policy.shouldCompress("random", 2048));
+        assertTrue(policy.shouldCompress("text", 2048));
+    }
+}
@@ -0,0 +1,92 @@
+package github.javaguide.compress.dictionary;
+
+import github.javaguide.compress.gzip.GzipCompress;
+import github.javaguide.remoting.constants.RpcConstants;
+import github.javaguide.remoting.dto.RpcRequest;
+import github.javaguide.serialize.hessian.HessianSerializer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DictionaryCompressTest {
+    private static final String SERVICE_NAME = "github.javaguide.HelloService";
+
+    @Test
+    void compressSmallBodiesWithTrainedDictionary() throws IOException {
+        DictionaryTrainer trainer = new DictionaryTrainer();
+        for (int i = 0; i < 200; i++) {
+            trainer.addSample(body(i));
+        }
+        byte[] dictionary = trainer.train(DictionaryTrainer.DEFAULT_DICTIONARY_SIZE);
+        assertTrue(dictionary.length > 0);
+        DictionaryRegistry clientRegistry = new DictionaryRegistry();
+        DictionaryRegistry serverRegistry = new DictionaryRegistry();
+        int id = clientRegistry.register(SERVICE_NAME, dictionary);
+        assertEquals(id, serverRegistry.register(SERVICE_NAME, dictionary));
+
+        byte[] body = body(1000);
+        assertTrue(body.length < 1024);
+        byte[] compressed = new DictionaryCompress(clientRegistry).compress(body, SERVICE_NAME);
+        // gzip can't do much on a body this small, the dictionary can
+        assertTrue(compressed.length * 2 < new GzipCompress().compress(body).length,
+                compressed.length + " bytes with dictionary");
+        assertArrayEquals(body, new DictionaryCompress(serverRegistry).decompress(compressed));
+
+        ByteArrayOutputStream streamCompressed = new ByteArrayOutputStream();
+        try (OutputStream out = new DictionaryCompress(clientRegistry).compress(streamCompressed, SERVICE_NAME)) {
+            out.write(body);
+        }
+        InputStream in = new DictionaryCompress(serverRegistry).decompress(new ByteArrayInputStream(streamCompressed.toByteArray()));
+        assertEquals(body.length, in.available());
+        byte[] decompressed = new byte[body.length];
+        assertEquals(body.length, in.read(decompressed));
+        assertArrayEquals(body, decompressed);
+    }
+
+    @Test
+    void serviceWithoutDictionary() {
+        DictionaryRegistry registry = new DictionaryRegistry();
+        registry.register(SERVICE_NAME, "github.javaguide.HelloService".getBytes());
+        DictionaryCompress dictionaryCompress = new DictionaryCompress(registry);
+        byte[] body = body(1);
+        // other services are compressed without a dictionary
+        assertArrayEquals(body, new DictionaryCompress(new DictionaryRegistry()).decompress(dictionaryCompress.compress(body, "other")));
+        // the receiver has to know the dictionary
+        byte[] compressed = dictionaryCompress.compress(body, SERVICE_NAME);
+        assertThrows(RuntimeException.class, () -> new DictionaryCompress(new DictionaryRegistry()).decompress(compressed));
+    }
+
+    @Test
+    void rejectOutputBeyondFrame() {
+        DictionaryCompress dictionaryCompress = new DictionaryCompress(new DictionaryRegistry());
+        // a few kilobytes of zeros inflating past a frame
+        byte[] compressed = dictionaryCompress.compress(new byte[RpcConstants.MAX_FRAME_LENGTH + 1]);
+        assertTrue(compressed.length < 64 * 1024);
+        assertThrows(RuntimeException.class, () -> dictionaryCompress.decompress(compressed));
+        assertThrows(RuntimeException.class, () -> dictionaryCompress.decompress(new ByteArrayInputStream(compressed)));
+        byte[] frame = new byte[RpcConstants.MAX_FRAME_LENGTH];
+        assertEquals(frame.length, dictionaryCompress.decompress(dictionaryCompress.compress(frame)).length);
+    }
+
+    private static byte[] body(int i) {
+        RpcRequest rpcRequest = RpcRequest.builder().methodName(i % 2 == 0 ? "hello" : "sayGoodbye")
+                .parameters(new Object[]{"message " + i, i})
+                .interfaceName(SERVICE_NAME)
+                .paramTypes(new Class<?>[]{String.class, Integer.class})
+                .requestId(UUID.randomUUID().toString())
+                .group("test" + i % 3)
+                .version("version1")
+                .build();
+        return new HessianSerializer().serialize(rpcRequest);
+    }
+}
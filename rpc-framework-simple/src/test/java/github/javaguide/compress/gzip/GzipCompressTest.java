@@ -1,13 +1,24 @@
 package github.javaguide.compress.gzip;
 
 import github.javaguide.compress.Compress;
+import github.javaguide.remoting.constants.RpcConstants;
 import github.javaguide.remoting.dto.RpcRequest;
 import github.javaguide.serialize.kyro.KryoSerializer;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class GzipCompressTest {
     @Test
@@ -28,5 +39,86 @@ class GzipCompressTest {
         assertEquals(rpcRequestBytes.length, decompressRpcRequestBytes.length);
     }
 
+    @Test
+    void compatibleWithJdkGzip() throws IOException {
+        Compress gzipCompress = new GzipCompress();
+        byte[] bytes = testBytes(100 * 1024);
+        // our output is readable by GZIPInputStream
+        assertArrayEquals(bytes, readAll(new GZIPInputStream(new ByteArrayInputStream(gzipCompress.compress(bytes)))));
+        // and GZIPOutputStream output is readable by us, also when the header carries a file name
+        ByteArrayOutputStream jdkCompressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(jdkCompressed)) {
+            gzip.write(bytes);
+        }
+        assertArrayEquals(bytes, gzipCompress.decompress(jdkCompressed.toByteArray()));
+        byte[] named = jdkCompressed.toByteArray();
+        byte[] withName = new byte[named.length + 2];
+        System.arraycopy(named, 0, withName, 0, 10);
+        withName[3] = 8;
+        withName[10] = 'a';
+        System.arraycopy(named, 10, withName, 12, named.length - 10);
+        assertArrayEquals(bytes, gzipCompress.decompress(withName));
+    }
+
+    @Test
+    void gzipStreamTest() throws IOException {
+        Compress gzipCompress = new GzipCompress();
+        // the same thread reuses its zlib streams and buffers, so run a few rounds of different sizes
+        for (int size : new int[]{0, 100, 100 * 1024, 10, 2 * 1024 * 1024}) {
+            byte[] bytes = testBytes(size);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (OutputStream out = gzipCompress.compress(compressed)) {
+                out.write(bytes, 0, Math.min(3, size));
+                out.write(bytes, Math.min(3, size), size - Math.min(3, size));
+            }
+            assertArrayEquals(bytes, gzipCompress.decompress(compressed.toByteArray()));
+            InputStream in = gzipCompress.decompress(new ByteArrayInputStream(compressed.toByteArray()));
+            assertEquals(size, in.available());
+            assertArrayEquals(bytes, readAll(in));
+            assertEquals(0, in.available());
+        }
+    }
+
+    @Test
+    void corruptTrailer() {
+        Compress gzipCompress = new GzipCompress();
+        byte[] compressed = gzipCompress.compress(testBytes(1024));
+        compressed[compressed.length - 6]++;
+        assertThrows(RuntimeException.class, () -> gzipCompress.decompress(compressed));
+        assertThrows(IOException.class, () -> readAll(gzipCompress.decompress(new ByteArrayInputStream(compressed))));
+    }
 
+    @Test
+    void rejectSizeBeyondFrame() {
+        Compress gzipCompress = new GzipCompress();
+        // random bytes don't shrink, so the deflate ratio allows the forged size
+        byte[] bytes = new byte[64 * 1024];
+        new Random(1).nextBytes(bytes);
+        byte[] compressed = gzipCompress.compress(bytes);
+        int size = RpcConstants.MAX_FRAME_LENGTH + 1;
+        for (int i = 0; i < 4; i++) {
+            compressed[compressed.length - 4 + i] = (byte) (size >> (i * 8));
+        }
+        assertThrows(RuntimeException.class, () -> gzipCompress.decompress(compressed));
+        // rejected before a buffer of that size is asked for
+        assertThrows(RuntimeException.class, () -> gzipCompress.decompress(new ByteArrayInputStream(compressed)));
+    }
+
+    private static byte[] testBytes(int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i * 31 % 97);
+        }
+        return bytes;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int n;
+        while ((n = in.read(buffer)) > -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
 }
\ No newline at end of file
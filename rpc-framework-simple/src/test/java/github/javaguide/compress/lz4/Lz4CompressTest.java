@@ -0,0 +1,79 @@
+package github.javaguide.compress.lz4;
+
+import github.javaguide.compress.Compress;
+import github.javaguide.remoting.dto.RpcRequest;
+import github.javaguide.serialize.kyro.KryoSerializer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class Lz4CompressTest {
+    @Test
+    void lz4CompressTest() {
+        Compress lz4Compress = new Lz4Compress();
+        RpcRequest rpcRequest = RpcRequest.builder().methodName("hello")
+                .parameters(new Object[]{"sayhelooloo", "sayhelooloosayhelooloo"})
+                .interfaceName("github.javaguide.HelloService")
+                .paramTypes(new Class<?>[]{String.class, String.class})
+                .requestId(UUID.randomUUID().toString())
+                .group("group1")
+                .version("version1")
+                .build();
+        KryoSerializer kryoSerializer = new KryoSerializer();
+        byte[] rpcRequestBytes = kryoSerializer.serialize(rpcRequest);
+        byte[] compressRpcRequestBytes = lz4Compress.compress(rpcRequestBytes);
+        byte[] decompressRpcRequestBytes = lz4Compress.decompress(compressRpcRequestBytes);
+        assertArrayEquals(rpcRequestBytes, decompressRpcRequestBytes);
+    }
+
+    @Test
+    void lz4StreamTest() throws IOException {
+        Compress lz4Compress = new Lz4Compress();
+        // bigger than the initial scratch buffers so that they have to grow
+        byte[] bytes = new byte[100 * 1024];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i % 64);
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = lz4Compress.compress(compressed)) {
+            out.write(bytes, 0, 10);
+            out.write(bytes, 10, bytes.length - 10);
+        }
+        assertArrayEquals(compressed.toByteArray(), lz4Compress.compress(bytes));
+        InputStream in = lz4Compress.decompress(new ByteArrayInputStream(compressed.toByteArray()));
+        byte[] decompressed = new byte[bytes.length];
+        assertEquals(bytes.length, in.read(decompressed));
+        assertEquals(-1, in.read());
+        assertArrayEquals(bytes, decompressed);
+    }
+
+    @Test
+    void rejectCorruptLengthHeader() {
+        Compress lz4Compress = new Lz4Compress();
+        byte[] compressed = lz4Compress.compress(new byte[1024]);
+        // an oversized length must not be allocated
+        byte[] oversized = compressed.clone();
+        oversized[0] = 0x7f;
+        assertThrows(RuntimeException.class, () -> lz4Compress.decompress(oversized));
+        assertThrows(RuntimeException.class, () -> lz4Compress.decompress(new ByteArrayInputStream(oversized)));
+        // a negative length must not reach new byte[]
+        byte[] negative = compressed.clone();
+        negative[0] = (byte) 0xff;
+        assertThrows(RuntimeException.class, () -> lz4Compress.decompress(negative));
+        assertThrows(RuntimeException.class, () -> lz4Compress.decompress(new ByteArrayInputStream(negative)));
+        // a length that doesn't match the block is caught by the safe decompressor
+        byte[] mismatched = compressed.clone();
+        mismatched[3] = (byte) (mismatched[3] + 1);
+        assertThrows(RuntimeException.class, () -> lz4Compress.decompress(mismatched));
+        assertThrows(RuntimeException.class, () -> lz4Compress.decompress(new ByteArrayInputStream(mismatched)));
+    }
+}
@@ -0,0 +1,90 @@
+package github.javaguide.proxy;
+
+import github.javaguide.config.RpcServiceConfig;
+import github.javaguide.enums.RpcErrorMessageEnum;
+import github.javaguide.enums.RpcResponseCodeEnum;
+import github.javaguide.exception.RpcException;
+import github.javaguide.remoting.dto.RpcRequest;
+import github.javaguide.remoting.dto.RpcResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RpcClientProxyTest {
+
+    interface AsyncService {
+        CompletableFuture<String> hello(String name);
+    }
+
+    interface SyncService {
+        String hello(String name);
+    }
+
+    @Test
+    void syncMethodThrowsTimeout() {
+        // the transport fails the future of the call like the timer of NettyRpcClient does
+        RpcClientProxy rpcClientProxy = new RpcClientProxy(rpcRequest -> {
+            CompletableFuture<RpcResponse<Object>> future = new CompletableFuture<>();
+            future.completeExceptionally(new RpcException(RpcErrorMessageEnum.REQUEST_TIMEOUT, "100ms"));
+            return future;
+        }, new RpcServiceConfig(), Runnable::run);
+        SyncService syncService = rpcClientProxy.getProxy(SyncService.class);
+        RpcException e = assertThrows(RpcException.class, () -> syncService.hello("rpc"));
+        assertTrue(e.getMessage().startsWith(RpcErrorMessageEnum.REQUEST_TIMEOUT.getMessage()), e.getMessage());
+    }
+
+    @Test
+    void asyncMethodReturnsFuture() throws Exception {
+        AtomicInteger callbacks = new AtomicInteger();
+        Executor callbackExecutor = command -> {
+            callbacks.incrementAndGet();
+            command.run();
+        };
+        RpcClientProxy rpcClientProxy = new RpcClientProxy(
+                rpcRequest -> RpcResponse.success("hello " + rpcRequest.getParameters()[0], null),
+                new RpcServiceConfig(), callbackExecutor);
+        AsyncService asyncService = rpcClientProxy.getProxy(AsyncService.class);
+        assertEquals("hello rpc", asyncService.hello("rpc").get());
+        assertEquals(1, callbacks.get());
+    }
+
+    @Test
+    void asyncMethodFailsFuture() {
+        RpcClientProxy rpcClientProxy = new RpcClientProxy(
+                rpcRequest -> RpcResponse.fail(RpcResponseCodeEnum.FAIL), new RpcServiceConfig(), Runnable::run);
+        AsyncService asyncService = rpcClientProxy.getProxy(AsyncService.class);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> asyncService.hello("rpc").get());
+        assertTrue(e.getCause() instanceof RpcException);
+    }
+
+    @Test
+    void requestCarriesPrecomputedKeys() {
+        List<RpcRequest> requests = new ArrayList<>();
+        RpcServiceConfig rpcServiceConfig = RpcServiceConfig.builder().group("group1").version("version1").build();
+        RpcClientProxy rpcClientProxy = new RpcClientProxy(rpcRequest -> {
+            requests.add(rpcRequest);
+            return RpcResponse.success("hello", null);
+        }, rpcServiceConfig, Runnable::run);
+        AsyncService asyncService = rpcClientProxy.getProxy(AsyncService.class);
+        asyncService.hello("a").join();
+        asyncService.hello("b").join();
+
+        assertEquals(2, requests.size());
+        RpcRequest first = requests.get(0);
+        assertEquals(AsyncService.class.getName() + "group1version1", first.getRpcServiceName());
+        assertEquals(RpcRequest.methodKey(first.getRpcServiceName(), "hello", new Class<?>[]{String.class}), first.getMethodKey());
+        assertArrayEquals(new Object[]{"b"}, requests.get(1).getParameters());
+        assertSame(first.getMethodKey(), requests.get(1).getMethodKey());
+    }
+}
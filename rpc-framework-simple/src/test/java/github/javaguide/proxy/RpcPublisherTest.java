@@ -0,0 +1,80 @@
+package github.javaguide.proxy;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RpcPublisherTest {
+
+    @Test
+    void callOnDemand() {
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> result = new CompletableFuture<>();
+        RpcPublisher<String> rpcPublisher = new RpcPublisher<>(() -> {
+            calls.incrementAndGet();
+            return result;
+        });
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        rpcPublisher.subscribe(subscriber);
+        // nothing is sent before the subscriber asks for it
+        assertEquals(0, calls.get());
+
+        subscriber.subscription.request(1);
+        subscriber.subscription.request(1);
+        assertEquals(1, calls.get());
+        result.complete("hello");
+        assertEquals(2, subscriber.signals.size());
+        assertEquals("hello", subscriber.signals.get(0));
+        assertEquals("complete", subscriber.signals.get(1));
+    }
+
+    @Test
+    void cancelAndError() {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        RpcPublisher<String> rpcPublisher = new RpcPublisher<>(() -> result);
+        RecordingSubscriber cancelled = new RecordingSubscriber();
+        rpcPublisher.subscribe(cancelled);
+        cancelled.subscription.request(1);
+        cancelled.subscription.cancel();
+        assertTrue(result.isCancelled());
+        assertTrue(cancelled.signals.isEmpty());
+
+        RecordingSubscriber failed = new RecordingSubscriber();
+        rpcPublisher.subscribe(failed);
+        failed.subscription.request(0);
+        assertTrue(failed.signals.get(0) instanceof IllegalArgumentException);
+    }
+
+    private static class RecordingSubscriber implements Subscriber<String> {
+        private final List<Object> signals = new ArrayList<>();
+        private Subscription subscription;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(String element) {
+            signals.add(element);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            signals.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            signals.add("complete");
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package github.javaguide.proxy;
+
+import github.javaguide.config.RpcServiceConfig;
+import github.javaguide.remoting.dto.RpcRequest;
+import github.javaguide.remoting.dto.RpcResponse;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RpcStubGeneratorTest {
+
+    public interface Calculator {
+        int add(int a, long b);
+
+        double scale(double value, float factor);
+
+        String[] split(String value, char separator);
+
+        void reset();
+
+        default int twice(int a) {
+            return add(a, a);
+        }
+    }
+
+    interface Hidden {
+        String hello();
+    }
+
+    @Test
+    void stubCallsTransport() {
+        List<RpcRequest> requests = new ArrayList<>();
+        RpcClientProxy rpcClientProxy = new RpcClientProxy(rpcRequest -> {
+            requests.add(rpcRequest);
+            Object[] parameters = rpcRequest.getParameters();
+            switch (rpcRequest.getMethodName()) {
+                case "add":
+                    return RpcResponse.success((int) ((Integer) parameters[0] + (Long) parameters[1]), null);
+                case "scale":
+                    return RpcResponse.success((Double) parameters[0] * (Float) parameters[1], null);
+                case "split":
+                    return RpcResponse.success(((String) parameters[0]).split(String.valueOf(parameters[1])), null);
+                default:
+                    return RpcResponse.success(null, null);
+            }
+        }, new RpcServiceConfig(), Runnable::run);
+
+        Calculator calculator = rpcClientProxy.getStub(Calculator.class);
+        assertFalse(Proxy.isProxyClass(calculator.getClass()));
+        assertTrue(calculator instanceof RpcStub);
+        assertEquals(5, calculator.add(2, 3L));
+        assertEquals(3.0, calculator.scale(1.5, 2f));
+        assertArrayEquals(new String[]{"a", "b"}, calculator.split("a,b", ','));
+        calculator.reset();
+        assertNull(requests.get(3).getParameters());
+        // default methods run locally
+        assertEquals(8, calculator.twice(4));
+        assertEquals(5, requests.size());
+        // one class per interface
+        assertSame(calculator.getClass(), rpcClientProxy.getStub(Calculator.class).getClass());
+
+        assertTrue(Proxy.isProxyClass(rpcClientProxy.getStub(Hidden.class).getClass()));
+    }
+}
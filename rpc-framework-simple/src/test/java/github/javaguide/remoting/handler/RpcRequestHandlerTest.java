@@ -0,0 +1,53 @@
+package github.javaguide.remoting.handler;
+
+import github.javaguide.config.RpcServiceConfig;
+import github.javaguide.exception.RpcException;
+import github.javaguide.factory.SingletonFactory;
+import github.javaguide.provider.impl.ZkServiceProviderImpl;
+import github.javaguide.remoting.dto.RpcRequest;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RpcRequestHandlerTest {
+
+    public interface Greeter {
+        String hello(String name);
+    }
+
+    public static class GreeterImpl implements Greeter {
+        @Override
+        public String hello(String name) {
+            return "hello " + name;
+        }
+
+        public String shout(String name) {
+            return "HELLO " + name;
+        }
+    }
+
+    @Test
+    void reflectMethodOutsideInterfaceOnce() {
+        SingletonFactory.getInstance(ZkServiceProviderImpl.class).addService(RpcServiceConfig.builder()
+                .group("").version("reflected").service(new GreeterImpl()).build());
+        RpcRequestHandler rpcRequestHandler = new RpcRequestHandler();
+
+        // not a method of the published interface, so it isn't prepared when the service is added
+        ServiceMethod shout = rpcRequestHandler.resolve(request("shout"));
+        assertSame(shout, rpcRequestHandler.resolve(request("shout")));
+        assertEquals("HELLO rpc", rpcRequestHandler.handle(request("shout")));
+        assertThrows(RpcException.class, () -> rpcRequestHandler.resolve(request("whisper")));
+    }
+
+    private static RpcRequest request(String methodName) {
+        return RpcRequest.builder().methodName(methodName)
+                .parameters(new Object[]{"rpc"})
+                .interfaceName(Greeter.class.getCanonicalName())
+                .paramTypes(new Class<?>[]{String.class})
+                .group("")
+                .version("reflected")
+                .build();
+    }
+}
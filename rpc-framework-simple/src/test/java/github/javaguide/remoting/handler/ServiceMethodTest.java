@@ -0,0 +1,58 @@
+package github.javaguide.remoting.handler;
+
+import github.javaguide.DemoRpcService;
+import github.javaguide.DemoRpcServiceImpl;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ServiceMethodTest {
+
+    interface Counter {
+        long add(int a, long b);
+
+        void reset();
+    }
+
+    private static class CounterImpl implements Counter {
+        private long total;
+
+        @Override
+        public long add(int a, long b) {
+            total += a + b;
+            return total;
+        }
+
+        @Override
+        public void reset() {
+            throw new IllegalStateException("can't reset");
+        }
+    }
+
+    @Test
+    void invokeThroughMethodHandle() throws Throwable {
+        ServiceMethod hello = new ServiceMethod(DemoRpcService.class.getName(), new DemoRpcServiceImpl(),
+                DemoRpcService.class.getMethod("hello"));
+        // a method without parameters is called with null, like Method.invoke
+        assertEquals("hello", hello.invoke(null));
+
+        CounterImpl counter = new CounterImpl();
+        ServiceMethod add = new ServiceMethod(Counter.class.getName(), counter,
+                Counter.class.getMethod("add", int.class, long.class));
+        assertEquals(3L, add.invoke(new Object[]{1, 2L}));
+        assertEquals(7L, add.invoke(new Object[]{2, 2L}));
+
+        ServiceMethod reset = new ServiceMethod(Counter.class.getName(), counter, Counter.class.getMethod("reset"));
+        // exceptions of the service aren't wrapped
+        assertThrows(IllegalStateException.class, () -> reset.invoke(new Object[0]));
+    }
+
+    @Test
+    void voidReturnsNull() throws Throwable {
+        ServiceMethod reset = new ServiceMethod(Runnable.class.getName(), (Runnable) () -> {
+        }, Runnable.class.getMethod("run"));
+        assertNull(reset.invoke(null));
+    }
+}
@@ -0,0 +1,87 @@
+package github.javaguide.remoting.transport.netty;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The coalescing tests stop the writes before the head of the pipeline, an {@link EmbeddedChannel} runs its pending
+ * tasks, and with them the scheduled flush, after every write or flush reaching the head
+ */
+class FlushCoalescingHandlerTest {
+
+    @Test
+    void flushAtEndOfTick() {
+        Outbound outbound = new Outbound();
+        EmbeddedChannel channel = new EmbeddedChannel(outbound, new FlushCoalescingHandler(64, 1024));
+        channel.pipeline().writeAndFlush(Unpooled.wrappedBuffer(new byte[10]));
+        channel.pipeline().writeAndFlush(Unpooled.wrappedBuffer(new byte[10]));
+        assertEquals(2, outbound.writes);
+        assertEquals(0, outbound.flushes);
+        // the flush task queued behind the writes flushes both
+        channel.runPendingTasks();
+        assertEquals(1, outbound.flushes);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void flushWhenBudgetIsReached() {
+        Outbound outbound = new Outbound();
+        EmbeddedChannel channel = new EmbeddedChannel(outbound, new FlushCoalescingHandler(2, 1024));
+        channel.pipeline().writeAndFlush(Unpooled.wrappedBuffer(new byte[10]));
+        assertEquals(0, outbound.flushes);
+        channel.pipeline().writeAndFlush(Unpooled.wrappedBuffer(new byte[10]));
+        assertEquals(1, outbound.flushes);
+        channel.pipeline().writeAndFlush(Unpooled.wrappedBuffer(new byte[2048]));
+        assertEquals(2, outbound.flushes);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void flushLowLatencyWriteRightAway() {
+        EmbeddedChannel channel = new EmbeddedChannel(new FlushCoalescingHandler(64, 1024));
+        channel.write(Unpooled.wrappedBuffer(new byte[10]));
+        FlushCoalescingHandler.flushNow(channel);
+        assertEquals(1, channel.outboundMessages().size());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void flushAfterRead() {
+        EmbeddedChannel channel = new EmbeddedChannel(new FlushCoalescingHandler(64, 1024));
+        channel.pipeline().fireChannelRead(new Object());
+        channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[10]));
+        channel.runPendingTasks();
+        // nothing scheduled while reading, the responses go out when the read completes
+        assertEquals(0, channel.outboundMessages().size());
+        channel.pipeline().fireChannelReadComplete();
+        assertEquals(1, channel.outboundMessages().size());
+        channel.finishAndReleaseAll();
+    }
+
+    /**
+     * Counts the writes and flushes the coalescing handler lets through, instead of passing them to the head
+     */
+    private static class Outbound extends ChannelOutboundHandlerAdapter {
+        private int writes;
+        private int flushes;
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            writes++;
+            ReferenceCountUtil.release(msg);
+            promise.setSuccess();
+        }
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) {
+            flushes++;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package github.javaguide.remoting.transport.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NettyTransportTest {
+
+    @Test
+    void connectWithSelectedTransport() throws InterruptedException {
+        EventLoopGroup group = NettyTransport.newEventLoopGroup(1);
+        try {
+            Channel server = NettyTransport.configure(new ServerBootstrap(), 1)
+                    .group(group)
+                    .channel(NettyTransport.serverSocketChannelClass())
+                    .childHandler(new ChannelInboundHandlerAdapter())
+                    .bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+            Channel client = NettyTransport.configure(new Bootstrap())
+                    .group(group)
+                    .channel(NettyTransport.socketChannelClass())
+                    .handler(new ChannelInboundHandlerAdapter())
+                    .connect(server.localAddress()).sync().channel();
+            assertTrue(client.isActive());
+            assertTrue(NettyTransport.socketChannelClass().isInstance(client));
+            client.close().sync();
+            server.close().sync();
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package github.javaguide.remoting.transport.netty.client;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChannelPoolTest {
+
+    @Test
+    void selectLeastPendingAndGrow() {
+        ChannelPool channelPool = new ChannelPool(new InetSocketAddress("127.0.0.1", 9998), 2, 2);
+        assertNull(channelPool.select());
+        EmbeddedChannel first = new EmbeddedChannel();
+        channelPool.add(first);
+        assertSame(first, channelPool.select());
+        // an idle channel is good enough
+        assertFalse(channelPool.tryGrow(first));
+        UnprocessedRequests.of(first).put(new CompletableFuture<>());
+        assertFalse(channelPool.tryGrow(first));
+
+        UnprocessedRequests.of(first).put(new CompletableFuture<>());
+        assertTrue(channelPool.tryGrow(first));
+        // the pool is full once the reserved connection is counted
+        assertFalse(channelPool.tryGrow(first));
+        EmbeddedChannel second = new EmbeddedChannel();
+        channelPool.addGrown(second);
+        assertEquals(2, channelPool.size());
+        for (int i = 0; i < 4; i++) {
+            assertSame(second, channelPool.select());
+        }
+
+        // closed channels leave the pool
+        second.close();
+        assertEquals(1, channelPool.size());
+        assertSame(first, channelPool.select());
+    }
+
+    @Test
+    void lightLoadStaysOnOneConnection() {
+        ChannelPool channelPool = new ChannelPool(new InetSocketAddress("127.0.0.1", 9998), 4);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channelPool.add(channel);
+        // a caller with a request in flight at a time never makes the pool grow
+        for (int i = 0; i < 100; i++) {
+            long requestId = UnprocessedRequests.of(channel).put(new CompletableFuture<>());
+            assertSame(channel, channelPool.select());
+            assertFalse(channelPool.tryGrow(channel));
+            UnprocessedRequests.of(channel).remove(requestId);
+        }
+        assertEquals(1, channelPool.size());
+    }
+
+    @Test
+    void closeIdleChannelsKeepsOne() {
+        ChannelPool channelPool = new ChannelPool(new InetSocketAddress("127.0.0.1", 9998), 3);
+        EmbeddedChannel busy = new EmbeddedChannel();
+        channelPool.add(busy);
+        channelPool.add(new EmbeddedChannel());
+        channelPool.add(new EmbeddedChannel());
+        UnprocessedRequests.of(busy).put(new CompletableFuture<>());
+
+        channelPool.closeIdleChannels(0);
+        assertEquals(1, channelPool.size());
+        Channel left = channelPool.select();
+        assertSame(busy, left);
+        UnprocessedRequests.of(busy).failAll(new IllegalStateException("closed"));
+        channelPool.closeIdleChannels(0);
+        assertTrue(busy.isActive());
+    }
+
+    @Test
+    void connectIsSingleFlight() {
+        ChannelPool channelPool = new ChannelPool(new InetSocketAddress("127.0.0.1", 9998), 2);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        ChannelPromise promise = channel.newPromise();
+        AtomicInteger connects = new AtomicInteger();
+        Supplier<ChannelFuture> connector = () -> {
+            connects.incrementAndGet();
+            return promise;
+        };
+        CompletableFuture<Channel> first = channelPool.connect(connector);
+        assertSame(first, channelPool.connect(connector));
+        assertFalse(first.isDone());
+        assertEquals(1, connects.get());
+
+        promise.setSuccess();
+        assertSame(channel, first.join());
+        assertSame(channel, channelPool.select());
+        // once connected, no new attempt is made
+        assertSame(channel, channelPool.connect(connector).join());
+        assertEquals(1, connects.get());
+    }
+
+    @Test
+    void connectFailsFast() {
+        ChannelPool channelPool = new ChannelPool(new InetSocketAddress("127.0.0.1", 9998), 2);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        CompletableFuture<Channel> failed = channelPool.connect(() -> channel.newPromise().setFailure(new ConnectException("refused")));
+        assertTrue(failed.isCompletedExceptionally());
+        assertNull(channelPool.select());
+        // the next call tries again
+        CompletableFuture<Channel> retry = channelPool.connect(channel::newPromise);
+        assertNotSame(failed, retry);
+        assertFalse(retry.isDone());
+    }
+}
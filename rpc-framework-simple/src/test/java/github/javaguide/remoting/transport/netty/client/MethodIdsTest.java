@@ -0,0 +1,48 @@
+package github.javaguide.remoting.transport.netty.client;
+
+import github.javaguide.remoting.constants.RpcConstants;
+import github.javaguide.remoting.dto.RpcMessage;
+import github.javaguide.remoting.dto.RpcRequest;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MethodIdsTest {
+
+    @Test
+    void bindBeforeSendingMethodId() {
+        MethodIds methodIds = MethodIds.of(new EmbeddedChannel());
+        RpcMessage first = request("hello", String.class);
+        methodIds.apply(first);
+        assertEquals(RpcConstants.FLAG_METHOD_BIND, first.getFlags());
+        int methodId = first.getMethodId();
+
+        // not acknowledged yet, sent in full without asking again
+        RpcMessage second = request("hello", String.class);
+        methodIds.apply(second);
+        assertEquals(0, second.getFlags());
+
+        // an overload is another method
+        RpcMessage overload = request("hello", Integer.class);
+        methodIds.apply(overload);
+        assertEquals(RpcConstants.FLAG_METHOD_BIND, overload.getFlags());
+        assertEquals(methodId + 1, overload.getMethodId());
+
+        methodIds.bound(methodId);
+        RpcMessage third = request("hello", String.class);
+        methodIds.apply(third);
+        assertEquals(RpcConstants.FLAG_METHOD_ID, third.getFlags());
+        assertEquals(methodId, third.getMethodId());
+    }
+
+    private static RpcMessage request(String methodName, Class<?> paramType) {
+        RpcRequest rpcRequest = RpcRequest.builder().methodName(methodName)
+                .interfaceName("github.javaguide.HelloService")
+                .paramTypes(new Class<?>[]{paramType})
+                .group("group1")
+                .version("version1")
+                .build();
+        return RpcMessage.builder().version(RpcConstants.VERSION_2).data(rpcRequest).build();
+    }
+}
@@ -0,0 +1,64 @@
+package github.javaguide.remoting.transport.netty.client;
+
+import github.javaguide.exception.RpcException;
+import github.javaguide.remoting.dto.RpcResponse;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UnprocessedRequestsTest {
+
+    @Test
+    void completeByRequestId() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        UnprocessedRequests unprocessedRequests = UnprocessedRequests.of(channel);
+        assertSame(unprocessedRequests, UnprocessedRequests.of(channel));
+        assertNotSame(unprocessedRequests, UnprocessedRequests.of(new EmbeddedChannel()));
+
+        CompletableFuture<RpcResponse<Object>> first = new CompletableFuture<>();
+        CompletableFuture<RpcResponse<Object>> second = new CompletableFuture<>();
+        long firstId = unprocessedRequests.put(first);
+        long secondId = unprocessedRequests.put(second);
+        assertEquals(firstId + 1, secondId);
+
+        RpcResponse<Object> rpcResponse = RpcResponse.success("hello", null);
+        unprocessedRequests.complete(secondId, rpcResponse);
+        assertSame(rpcResponse, second.join());
+        // late or unknown responses are dropped
+        unprocessedRequests.complete(secondId, rpcResponse);
+
+        unprocessedRequests.failAll(new IllegalStateException("closed"));
+        assertTrue(first.isCompletedExceptionally());
+    }
+
+    @Test
+    void expireAfterTimeout() throws InterruptedException {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        UnprocessedRequests unprocessedRequests = UnprocessedRequests.of(channel);
+        CompletableFuture<RpcResponse<Object>> slow = new CompletableFuture<>();
+        CompletableFuture<RpcResponse<Object>> fast = new CompletableFuture<>();
+        long slowId = unprocessedRequests.put(slow, 20);
+        long fastId = unprocessedRequests.put(fast, 20);
+        unprocessedRequests.complete(fastId, RpcResponse.success("hello", null));
+
+        // the timer hands the expiry over to the event loop of the channel
+        for (int i = 0; i < 200 && !slow.isDone(); i++) {
+            Thread.sleep(10);
+            channel.runPendingTasks();
+        }
+        ExecutionException e = assertThrows(ExecutionException.class, slow::get);
+        assertTrue(e.getCause() instanceof RpcException);
+        assertEquals(0, unprocessedRequests.pending());
+        assertFalse(UnprocessedRequests.isExpected(channel, slowId));
+        assertEquals("hello", fast.join().getData());
+    }
+}
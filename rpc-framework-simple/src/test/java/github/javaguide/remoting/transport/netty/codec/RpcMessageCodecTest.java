@@ -0,0 +1,246 @@
+package github.javaguide.remoting.transport.netty.codec;
+
+import github.javaguide.enums.CompressTypeEnum;
+import github.javaguide.enums.SerializationTypeEnum;
+import github.javaguide.remoting.constants.RpcConstants;
+import github.javaguide.remoting.dto.RpcInvocation;
+import github.javaguide.remoting.dto.RpcMessage;
+import github.javaguide.remoting.dto.RpcRequest;
+import github.javaguide.remoting.dto.RpcResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RpcMessageCodecTest {
+
+    @Test
+    void encodeAndDecodeRequest() {
+        RpcRequest rpcRequest = RpcRequest.builder().methodName("hello")
+                .parameters(new Object[]{"sayhelooloo", "sayhelooloosayhelooloo"})
+                .interfaceName("github.javaguide.HelloService")
+                .paramTypes(new Class<?>[]{String.class, String.class})
+                .requestId(UUID.randomUUID().toString())
+                .group("group1")
+                .version("version1")
+                .build();
+        RpcMessage rpcMessage = RpcMessage.builder().data(rpcRequest)
+                .codec(SerializationTypeEnum.HESSIAN.getCode())
+                .compress(CompressTypeEnum.GZIP.getCode())
+                .messageType(RpcConstants.REQUEST_TYPE).build();
+
+        EmbeddedChannel encoder = new EmbeddedChannel(new RpcMessageEncoder());
+        assertTrue(encoder.writeOutbound(rpcMessage));
+        ByteBuf frame = encoder.readOutbound();
+        assertEquals(frame.readableBytes(), frame.getInt(RpcConstants.MAGIC_NUMBER.length + 1));
+
+        EmbeddedChannel decoder = new EmbeddedChannel(new RpcMessageDecoder());
+        assertTrue(decoder.writeInbound(frame));
+        RpcMessage decoded = decoder.readInbound();
+        assertEquals(RpcConstants.REQUEST_TYPE, decoded.getMessageType());
+        RpcRequest actual = (RpcRequest) decoded.getData();
+        assertEquals(rpcRequest.getRequestId(), actual.getRequestId());
+        assertEquals(rpcRequest.getInterfaceName(), actual.getInterfaceName());
+        assertArrayEquals(rpcRequest.getParameters(), actual.getParameters());
+    }
+
+    @Test
+    void encodeAndDecodeVersion2() {
+        RpcRequest rpcRequest = RpcRequest.builder().methodName("hello")
+                .parameters(new Object[]{"sayhelooloo"})
+                .interfaceName("github.javaguide.HelloService")
+                .paramTypes(new Class<?>[]{String.class})
+                .build();
+        Map<String, String> attachments = new HashMap<>();
+        attachments.put("deadline", "1500");
+        attachments.put("trace-id", "调用链");
+        RpcMessage rpcMessage = RpcMessage.builder().data(rpcRequest)
+                .version(RpcConstants.VERSION_2)
+                .flags(RpcConstants.FLAG_ONEWAY)
+                .requestId(Long.MAX_VALUE - 1)
+                .attachments(attachments)
+                .codec(SerializationTypeEnum.HESSIAN.getCode())
+                .compress(CompressTypeEnum.GZIP.getCode())
+                .messageType(RpcConstants.REQUEST_TYPE).build();
+
+        EmbeddedChannel encoder = new EmbeddedChannel(new RpcMessageEncoder());
+        assertTrue(encoder.writeOutbound(rpcMessage));
+        ByteBuf frame = encoder.readOutbound();
+        assertEquals(RpcConstants.VERSION_2, frame.getByte(RpcConstants.MAGIC_NUMBER.length));
+        assertEquals(frame.readableBytes(), frame.getInt(RpcConstants.MAGIC_NUMBER.length + 1));
+
+        EmbeddedChannel decoder = new EmbeddedChannel(new RpcMessageDecoder());
+        assertTrue(decoder.writeInbound(frame));
+        RpcMessage decoded = decoder.readInbound();
+        assertEquals(RpcConstants.VERSION_2, decoded.getVersion());
+        assertEquals(RpcConstants.FLAG_ONEWAY | RpcConstants.FLAG_ATTACHMENTS, decoded.getFlags());
+        assertEquals(Long.MAX_VALUE - 1, decoded.getRequestId());
+        assertEquals(attachments, decoded.getAttachments());
+        assertArrayEquals(rpcRequest.getParameters(), ((RpcRequest) decoded.getData()).getParameters());
+
+        // without attachments the header is the fixed 21 bytes
+        rpcMessage.setAttachments(null);
+        rpcMessage.setMessageType(RpcConstants.HEARTBEAT_REQUEST_TYPE);
+        assertTrue(encoder.writeOutbound(rpcMessage));
+        frame = encoder.readOutbound();
+        assertEquals(RpcConstants.HEAD_LENGTH_V2, frame.readableBytes());
+        assertTrue(decoder.writeInbound(frame));
+        decoded = decoder.readInbound();
+        assertEquals(RpcConstants.FLAG_ONEWAY, decoded.getFlags());
+        assertEquals(RpcConstants.PING, decoded.getData());
+    }
+
+    @Test
+    void encodeByMethodId() {
+        RpcRequest rpcRequest = RpcRequest.builder().methodName("hello")
+                .parameters(new Object[]{"sayhelooloo"})
+                .interfaceName("github.javaguide.HelloService")
+                .paramTypes(new Class<?>[]{String.class})
+                .group("group1")
+                .version("version1")
+                .build();
+        RpcMessage rpcMessage = RpcMessage.builder().data(rpcRequest)
+                .version(RpcConstants.VERSION_2)
+                .flags(RpcConstants.FLAG_METHOD_BIND)
+                .methodId(7)
+                .codec(SerializationTypeEnum.HESSIAN.getCode())
+                .compress(CompressTypeEnum.NONE.getCode())
+                .messageType(RpcConstants.REQUEST_TYPE).build();
+        EmbeddedChannel encoder = new EmbeddedChannel(new RpcMessageEncoder());
+        EmbeddedChannel decoder = new EmbeddedChannel(new RpcMessageDecoder());
+
+        // the binding carries the whole request
+        assertTrue(encoder.writeOutbound(rpcMessage));
+        ByteBuf frame = encoder.readOutbound();
+        int bindLength = frame.readableBytes();
+        assertTrue(decoder.writeInbound(frame));
+        RpcMessage decoded = decoder.readInbound();
+        assertEquals(7, decoded.getMethodId());
+        assertEquals(rpcRequest.getInterfaceName(), ((RpcRequest) decoded.getData()).getInterfaceName());
+
+        // later calls only carry the parameters
+        rpcMessage.setFlags(RpcConstants.FLAG_METHOD_ID);
+        assertTrue(encoder.writeOutbound(rpcMessage));
+        frame = encoder.readOutbound();
+        assertTrue(frame.readableBytes() < bindLength / 2);
+        assertTrue(decoder.writeInbound(frame));
+        decoded = decoder.readInbound();
+        assertEquals(RpcConstants.FLAG_METHOD_ID, decoded.getFlags());
+        assertEquals(7, decoded.getMethodId());
+        assertArrayEquals(rpcRequest.getParameters(), ((RpcInvocation) decoded.getData()).getParameters());
+    }
+
+    @Test
+    void decodeDeferredBody() {
+        RpcRequest rpcRequest = RpcRequest.builder().methodName("hello")
+                .parameters(new Object[]{"sayhelooloo"})
+                .interfaceName("github.javaguide.HelloService")
+                .paramTypes(new Class<?>[]{String.class})
+                .requestId(UUID.randomUUID().toString())
+                .build();
+        RpcMessage rpcMessage = RpcMessage.builder().data(rpcRequest)
+                .codec(SerializationTypeEnum.KYRO.getCode())
+                .compress(CompressTypeEnum.GZIP.getCode())
+                .messageType(RpcConstants.REQUEST_TYPE).build();
+
+        EmbeddedChannel encoder = new EmbeddedChannel(new RpcMessageEncoder());
+        assertTrue(encoder.writeOutbound(rpcMessage));
+        EmbeddedChannel decoder = new EmbeddedChannel(new RpcMessageDecoder(true));
+        assertTrue(decoder.writeInbound((ByteBuf) encoder.readOutbound()));
+        RpcMessage decoded = decoder.readInbound();
+        ByteBuf body = (ByteBuf) decoded.getData();
+        assertEquals(1, body.refCnt());
+
+        RpcMessageDecoder.decodeDeferredBody(decoded);
+        assertEquals(0, body.refCnt());
+        RpcRequest actual = (RpcRequest) decoded.getData();
+        assertEquals(rpcRequest.getRequestId(), actual.getRequestId());
+        assertArrayEquals(rpcRequest.getParameters(), actual.getParameters());
+    }
+
+    @Test
+    void dropResponseOfUnknownRequest() {
+        RpcMessage rpcMessage = RpcMessage.builder().data(RpcResponse.success("hello", null))
+                .version(RpcConstants.VERSION_2)
+                .codec(SerializationTypeEnum.HESSIAN.getCode())
+                .compress(CompressTypeEnum.GZIP.getCode())
+                .requestId(1)
+                .messageType(RpcConstants.RESPONSE_TYPE).build();
+        EmbeddedChannel encoder = new EmbeddedChannel(new RpcMessageEncoder());
+        assertTrue(encoder.writeOutbound(rpcMessage));
+        ByteBuf frame = encoder.readOutbound();
+
+        Set<Long> expected = new HashSet<>();
+        expected.add(1L);
+        EmbeddedChannel decoder = new EmbeddedChannel(new RpcMessageDecoder((channel, requestId) -> expected.contains(requestId)));
+        assertTrue(decoder.writeInbound(frame.retainedDuplicate()));
+        assertEquals("hello", ((RpcResponse<?>) ((RpcMessage) decoder.readInbound()).getData()).getData());
+
+        // the request is done, the same response again is dropped
+        expected.remove(1L);
+        assertFalse(decoder.writeInbound(frame));
+        assertNull(decoder.readInbound());
+        assertEquals(0, frame.refCnt());
+    }
+
+    @Test
+    void compressOnlyLargeBodies() {
+        char[] chars = new char[4096];
+        Arrays.fill(chars, 'a');
+        assertEquals(CompressTypeEnum.NONE.getCode(), encodedCompressType(RpcConstants.VERSION_2, "small"));
+        assertEquals(CompressTypeEnum.GZIP.getCode(), encodedCompressType(RpcConstants.VERSION_2, new String(chars)));
+    }
+
+    @Test
+    void compressSmallBodiesOfVersion1() {
+        // version 1 peers can't read the compress type none
+        assertEquals(CompressTypeEnum.GZIP.getCode(), encodedCompressType(RpcConstants.VERSION_1, "small"));
+        RpcMessage rpcMessage = RpcMessage.builder().data(RpcResponse.success("hi", "1"))
+                .codec(SerializationTypeEnum.HESSIAN.getCode())
+                .compress(CompressTypeEnum.GZIP.getCode())
+                .requestId(1)
+                .messageType(RpcConstants.RESPONSE_TYPE).build();
+        EmbeddedChannel encoder = new EmbeddedChannel(new RpcMessageEncoder());
+        assertTrue(encoder.writeOutbound(rpcMessage));
+        ByteBuf frame = encoder.readOutbound();
+        assertEquals(RpcConstants.VERSION_1, frame.getByte(RpcConstants.MAGIC_NUMBER.length));
+        assertEquals(CompressTypeEnum.GZIP.getCode(), frame.getByte(11));
+        frame.release();
+    }
+
+    private static byte encodedCompressType(byte version, String parameter) {
+        RpcRequest rpcRequest = RpcRequest.builder().methodName("hello")
+                .parameters(new Object[]{parameter})
+                .interfaceName("github.javaguide.HelloService")
+                .paramTypes(new Class<?>[]{String.class})
+                .build();
+        RpcMessage rpcMessage = RpcMessage.builder().data(rpcRequest)
+                .version(version)
+                .codec(SerializationTypeEnum.HESSIAN.getCode())
+                .compress(CompressTypeEnum.GZIP.getCode())
+                .messageType(RpcConstants.REQUEST_TYPE).build();
+        EmbeddedChannel encoder = new EmbeddedChannel(new RpcMessageEncoder());
+        assertTrue(encoder.writeOutbound(rpcMessage));
+        ByteBuf frame = encoder.readOutbound();
+        // magic code, version, full length, messageType and codec come before the compress type
+        byte compressType = frame.getByte(11);
+
+        EmbeddedChannel decoder = new EmbeddedChannel(new RpcMessageDecoder());
+        assertTrue(decoder.writeInbound(frame));
+        RpcMessage decoded = decoder.readInbound();
+        assertArrayEquals(rpcRequest.getParameters(), ((RpcRequest) decoded.getData()).getParameters());
+        return compressType;
+    }
+}
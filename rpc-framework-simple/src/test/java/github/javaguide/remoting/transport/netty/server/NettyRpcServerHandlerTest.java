@@ -0,0 +1,225 @@
+package github.javaguide.remoting.transport.netty.server;
+
+import github.javaguide.annotation.RpcNonBlocking;
+import github.javaguide.config.RpcServiceConfig;
+import github.javaguide.enums.CompressTypeEnum;
+import github.javaguide.enums.RpcResponseCodeEnum;
+import github.javaguide.enums.SerializationTypeEnum;
+import github.javaguide.factory.SingletonFactory;
+import github.javaguide.provider.impl.ZkServiceProviderImpl;
+import github.javaguide.remoting.constants.RpcConstants;
+import github.javaguide.remoting.dto.RpcInvocation;
+import github.javaguide.remoting.dto.RpcMessage;
+import github.javaguide.remoting.dto.RpcRequest;
+import github.javaguide.remoting.dto.RpcResponse;
+import github.javaguide.remoting.transport.netty.codec.RpcMessageDecoder;
+import github.javaguide.remoting.transport.netty.codec.RpcMessageEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NettyRpcServerHandlerTest {
+
+    public interface SlowService {
+        CompletableFuture<String> hello(String name);
+    }
+
+    public static class SlowServiceImpl implements SlowService {
+        private CompletableFuture<String> pending;
+
+        @Override
+        public CompletableFuture<String> hello(String name) {
+            pending = new CompletableFuture<>();
+            return pending.thenApply(greeting -> greeting + " " + name);
+        }
+    }
+
+    public interface CacheService {
+        String get(String key);
+    }
+
+    @RpcNonBlocking
+    public static class CacheServiceImpl implements CacheService {
+        @Override
+        public String get(String key) {
+            return "cached " + key;
+        }
+    }
+
+    @Test
+    void answerWhenStageCompletes() {
+        SlowServiceImpl slowService = new SlowServiceImpl();
+        SingletonFactory.getInstance(ZkServiceProviderImpl.class).addService(RpcServiceConfig.builder()
+                .group("").version("async").service(slowService).build());
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyRpcServerHandler(new ServiceExecutors(profile -> Runnable::run)));
+
+        channel.writeInbound(request("async", 7));
+        // the handler thread is free, the response waits for the service
+        assertNull(channel.readOutbound());
+        slowService.pending.complete("hello");
+        RpcMessage response = channel.readOutbound();
+        assertEquals(7, response.getRequestId());
+        assertEquals("hello rpc", ((RpcResponse<?>) response.getData()).getData());
+
+        channel.writeInbound(request("async", 8));
+        slowService.pending.completeExceptionally(new IllegalStateException("downstream failed"));
+        response = channel.readOutbound();
+        assertEquals(8, response.getRequestId());
+        assertEquals(RpcResponseCodeEnum.FAIL.getCode(), ((RpcResponse<?>) response.getData()).getCode());
+    }
+
+    @Test
+    void failWhenExecutorIsFull() {
+        SingletonFactory.getInstance(ZkServiceProviderImpl.class).addService(RpcServiceConfig.builder()
+                .group("").version("rejected").service(new SlowServiceImpl()).build());
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyRpcServerHandler(new ServiceExecutors(profile -> task -> {
+            throw new RejectedExecutionException(profile + " is full");
+        })));
+
+        channel.writeInbound(request("rejected", 9));
+        // answered right away instead of waiting in an unbounded queue
+        RpcMessage response = channel.readOutbound();
+        assertEquals(9, response.getRequestId());
+        assertEquals(RpcResponseCodeEnum.FAIL.getCode(), ((RpcResponse<?>) response.getData()).getCode());
+        assertTrue(channel.isActive());
+    }
+
+    @Test
+    void callNonBlockingMethodInline() {
+        SingletonFactory.getInstance(ZkServiceProviderImpl.class).addService(RpcServiceConfig.builder()
+                .group("").version("inline").service(new CacheServiceImpl()).build());
+        List<Runnable> dispatched = new ArrayList<>();
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyRpcServerHandler(new ServiceExecutors(profile -> dispatched::add)));
+
+        // the first call was decoded by the I/O thread, it is resolved and bound right there
+        RpcRequest rpcRequest = RpcRequest.builder().methodName("get")
+                .parameters(new Object[]{"k"})
+                .interfaceName(CacheService.class.getCanonicalName())
+                .paramTypes(new Class<?>[]{String.class})
+                .group("")
+                .version("inline")
+                .build();
+        channel.writeInbound(RpcMessage.builder().data(rpcRequest)
+                .version(RpcConstants.VERSION_2)
+                .codec(SerializationTypeEnum.HESSIAN.getCode())
+                .compress(CompressTypeEnum.GZIP.getCode())
+                .flags(RpcConstants.FLAG_METHOD_BIND)
+                .methodId(3)
+                .requestId(10)
+                .messageType(RpcConstants.REQUEST_TYPE).build());
+        assertTrue(dispatched.isEmpty());
+        RpcMessage response = channel.readOutbound();
+        assertEquals(RpcConstants.FLAG_METHOD_BIND, response.getFlags());
+
+        // bound calls of the non-blocking method don't leave the I/O thread
+        channel.writeInbound(RpcMessage.builder().data(new RpcInvocation(new Object[]{"k2"}))
+                .version(RpcConstants.VERSION_2)
+                .codec(SerializationTypeEnum.HESSIAN.getCode())
+                .compress(CompressTypeEnum.GZIP.getCode())
+                .flags(RpcConstants.FLAG_METHOD_ID)
+                .methodId(3)
+                .requestId(11)
+                .messageType(RpcConstants.REQUEST_TYPE).build());
+        assertTrue(dispatched.isEmpty());
+        response = channel.readOutbound();
+        assertEquals(11, response.getRequestId());
+        assertEquals("cached k2", ((RpcResponse<?>) response.getData()).getData());
+    }
+
+    @Test
+    void callNonBlockingMethodInlineOnceBound() {
+        SingletonFactory.getInstance(ZkServiceProviderImpl.class).addService(RpcServiceConfig.builder()
+                .group("").version("deferred").service(new CacheServiceImpl()).build());
+        List<Runnable> dispatched = new ArrayList<>();
+        EmbeddedChannel channel = new EmbeddedChannel(new RpcMessageDecoder(true),
+                new NettyRpcServerHandler(new ServiceExecutors(profile -> dispatched::add)));
+        RpcRequest rpcRequest = RpcRequest.builder().methodName("get")
+                .parameters(new Object[]{"k"})
+                .interfaceName(CacheService.class.getCanonicalName())
+                .paramTypes(new Class<?>[]{String.class})
+                .group("")
+                .version("deferred")
+                .build();
+        RpcMessage bind = RpcMessage.builder().data(rpcRequest)
+                .version(RpcConstants.VERSION_2)
+                .codec(SerializationTypeEnum.HESSIAN.getCode())
+                .compress(CompressTypeEnum.GZIP.getCode())
+                .flags(RpcConstants.FLAG_METHOD_BIND)
+                .methodId(4)
+                .requestId(13)
+                .messageType(RpcConstants.REQUEST_TYPE).build();
+
+        // the method of an undecoded request is unknown, it is decoded and called on the default executor
+        channel.writeInbound(encode(bind));
+        assertEquals(1, dispatched.size());
+        assertNull(channel.readOutbound());
+        dispatched.get(0).run();
+        RpcMessage response = channel.readOutbound();
+        assertEquals(RpcConstants.FLAG_METHOD_BIND, response.getFlags());
+        assertEquals("cached k", ((RpcResponse<?>) response.getData()).getData());
+
+        // the bound method is known from the header, the call doesn't leave the I/O thread
+        bind.setFlags(RpcConstants.FLAG_METHOD_ID);
+        bind.setRequestId(14);
+        channel.writeInbound(encode(bind));
+        assertEquals(1, dispatched.size());
+        response = channel.readOutbound();
+        assertEquals(14, response.getRequestId());
+        assertEquals("cached k", ((RpcResponse<?>) response.getData()).getData());
+    }
+
+    @Test
+    void decodeOnIoThreadForVirtualProfile() {
+        SlowServiceImpl slowService = new SlowServiceImpl();
+        SingletonFactory.getInstance(ZkServiceProviderImpl.class).addService(RpcServiceConfig.builder()
+                .group("").version("virtual").service(slowService).build());
+        ByteBuf frame = encode(request("virtual", 12));
+        List<Runnable> dispatched = new ArrayList<>();
+        EmbeddedChannel channel = new EmbeddedChannel(new RpcMessageDecoder(true),
+                new NettyRpcServerHandler(new ServiceExecutors(profile -> dispatched::add, profile -> true)));
+
+        channel.writeInbound(frame);
+        // the deferred body is decoded and released before the request leaves the I/O thread
+        assertEquals(1, dispatched.size());
+        assertEquals(0, frame.refCnt());
+        dispatched.get(0).run();
+        slowService.pending.complete("hello");
+        RpcMessage response = channel.readOutbound();
+        assertEquals(12, response.getRequestId());
+        assertEquals("hello rpc", ((RpcResponse<?>) response.getData()).getData());
+    }
+
+    private static ByteBuf encode(RpcMessage rpcMessage) {
+        EmbeddedChannel client = new EmbeddedChannel(new RpcMessageEncoder());
+        client.writeOutbound(rpcMessage);
+        return client.readOutbound();
+    }
+
+    /**
+     * @param version the version the test published its own service under, the provider is shared by all tests
+     */
+    private static RpcMessage request(String version, long requestId) {
+        RpcRequest rpcRequest = RpcRequest.builder().methodName("hello")
+                .parameters(new Object[]{"rpc"})
+                .interfaceName(SlowService.class.getCanonicalName())
+                .paramTypes(new Class<?>[]{String.class})
+                .group("")
+                .version(version)
+                .build();
+        return RpcMessage.builder().data(rpcRequest)
+                .version(RpcConstants.VERSION_2)
+                .codec(SerializationTypeEnum.HESSIAN.getCode())
+                .compress(CompressTypeEnum.GZIP.getCode())
+                .requestId(requestId)
+                .messageType(RpcConstants.REQUEST_TYPE).build();
+    }
+}
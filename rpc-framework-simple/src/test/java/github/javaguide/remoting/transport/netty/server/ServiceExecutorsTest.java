@@ -0,0 +1,60 @@
+package github.javaguide.remoting.transport.netty.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ServiceExecutorsTest {
+
+    @Test
+    void rejectBeyondMaxConcurrency() {
+        List<Runnable> started = new ArrayList<>();
+        Executor executor = new ServiceExecutors.ConcurrencyLimitedExecutor(started::add, 2);
+        executor.execute(() -> {
+        });
+        executor.execute(() -> {
+        });
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {
+        }));
+        // a finished request frees its permit
+        started.get(0).run();
+        executor.execute(() -> {
+        });
+        assertEquals(3, started.size());
+    }
+
+    @Test
+    void pendingFutureKeepsItsPermit() {
+        CompletableFuture<Object> invocation = new CompletableFuture<>();
+        Executor executor = new ServiceExecutors.ConcurrencyLimitedExecutor(Runnable::run, 1);
+        executor.execute(() -> ServiceExecutors.releaseWhenComplete(invocation));
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {
+        }));
+        invocation.complete(null);
+        executor.execute(() -> {
+        });
+        executor.execute(() -> {
+        });
+    }
+
+    @Test
+    void blankProfileIsDefault() {
+        List<String> created = new ArrayList<>();
+        ServiceExecutors serviceExecutors = new ServiceExecutors(profile -> {
+            created.add(profile);
+            return Runnable::run;
+        });
+        assertSame(serviceExecutors.get(null), serviceExecutors.get(""));
+        assertSame(serviceExecutors.get(ServiceExecutors.DEFAULT_PROFILE), serviceExecutors.get(null));
+        serviceExecutors.get("jdbc");
+        assertEquals(2, created.size());
+    }
+}